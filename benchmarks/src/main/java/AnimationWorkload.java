@@ -0,0 +1,29 @@
+import benchmarks.Workload;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Finds the current frame of an animation with frames of random lengths, advancing the clock by a frame (16 ms) each time
+public class AnimationWorkload implements Workload {
+    private final TmxParser.Animation animation;
+    private int time;
+
+    public AnimationWorkload(int frameCount) {
+        Random random = new Random(42);
+        List<TmxParser.Frame> frames = new ArrayList<>();
+        for (int i = 0; i < frameCount; i++) {
+            frames.add(new TmxParser.Frame(i, 50 + random.nextInt(200)));
+        }
+        animation = new TmxParser.Animation(frames);
+    }
+
+    @Override
+    public Object run() {
+        time += 16;
+        if (time >= animation.totalDuration) {
+            time -= animation.totalDuration;
+        }
+        return animation.getFrameForTime(time);
+    }
+}
@@ -0,0 +1,70 @@
+import benchmarks.Workload;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Checks the character against a generated map with randomly placed objects, walking it over the map
+public class CollisionWorkload implements Workload {
+    private static final int MAP_TILES = 200, TILE_SIZE = 32;
+    private static final int POSITIONS = 1024;  // Power of two
+
+    private final Path directory;
+    private final TmxParser parser;
+    private final Character character;
+    private final int[] xs = new int[POSITIONS], ys = new int[POSITIONS];
+    private int next;
+
+    /**
+     * @param objects Number of objects on the map. They are scenery, so touching them neither
+     *                removes them nor starts a fight.
+     */
+    public CollisionWorkload(int objects) throws IOException {
+        directory = Files.createTempDirectory("collision-benchmark");
+        Path map = directory.resolve("objects.tmx");
+        Random random = new Random(42);
+        int mapSize = MAP_TILES * TILE_SIZE;
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(map))) {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            out.printf("<map version=\"1.10\" orientation=\"orthogonal\" width=\"%d\" height=\"%d\" tilewidth=\"%d\" tileheight=\"%d\" infinite=\"0\">%n",
+                    MAP_TILES, MAP_TILES, TILE_SIZE, TILE_SIZE);
+            out.println(" <objectgroup id=\"1\" name=\"Objects\">");
+            for (int i = 0; i < objects; i++) {
+                out.printf("  <object id=\"%d\" name=\"rock\" x=\"%d\" y=\"%d\" width=\"16\" height=\"16\"/>%n",
+                        i + 1, random.nextInt(mapSize), random.nextInt(mapSize));
+            }
+            out.println(" </objectgroup>");
+            out.println("</map>");
+        }
+        parser = new TmxParser(map.toString(), false);
+
+        character = new Character(TmxMapExample.PLAYER_SPRITE, 0, 0, 32, 32);
+        for (int i = 0; i < POSITIONS; i++) {
+            xs[i] = random.nextInt(mapSize - 32);
+            ys[i] = random.nextInt(mapSize - 32);
+        }
+    }
+
+    @Override
+    public Object run() {
+        int i = next++ & (POSITIONS - 1);
+        character.setX(xs[i]);
+        character.setY(ys[i]);
+        CollisionDetector.collectPickups(character, parser, FrameStats.NONE);
+        return character;
+    }
+
+    @Override
+    public void close() {
+        parser.dispose();
+        try {
+            Files.deleteIfExists(directory.resolve("objects.tmx"));
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
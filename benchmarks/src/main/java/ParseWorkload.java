@@ -0,0 +1,33 @@
+import benchmarks.Workload;
+
+// Loads a map from its XML or its compiled copy. Tilesets stay cached in the registry, as when a map is loaded again.
+public class ParseWorkload implements Workload {
+    private final String path;
+    private final String source;
+
+    /**
+     * @param path   The .tmx file.
+     * @param source "stax", "dom" or "compiled".
+     */
+    public ParseWorkload(String path, String source) {
+        this.path = path;
+        this.source = source;
+        if (source.equals("compiled")) {
+            new TmxParser(path).dispose();  // Make sure the compiled copy exists
+        }
+    }
+
+    @Override
+    public Object run() {
+        TmxParser parser = source.equals("compiled") ? new TmxParser(path) : new TmxParser(path, source.equals("dom"));
+        parser.dispose();
+        return parser;
+    }
+
+    @Override
+    public void close() {
+        if (source.equals("compiled")) {
+            TmxBinaryFormat.compiledFile(path).delete();  // Don't leave benchmark copies in the cache directory
+        }
+    }
+}
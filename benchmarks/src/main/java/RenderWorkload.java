@@ -0,0 +1,47 @@
+import benchmarks.Workload;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+// Draws one frame the way TmxMapExample does: an 800x600 view at 2x zoom
+public class RenderWorkload implements Workload {
+    private static final int SCREEN_WIDTH = 800, SCREEN_HEIGHT = 600;
+    private static final float ZOOM = 2f;
+
+    private final TmxParser parser;
+    private final TmxRenderer renderer;
+    private final BufferedImage screen = ImageUtils.createCompatibleImage(SCREEN_WIDTH, SCREEN_HEIGHT);
+    private final Rectangle view;
+
+    /**
+     * @param path       The .tmx file.
+     * @param position   Where the camera looks, from 0 (top left corner) to 1 (bottom right corner).
+     * @param chunkCache Whether static tiles are blitted from pre-rendered chunks.
+     */
+    public RenderWorkload(String path, double position, boolean chunkCache) {
+        parser = new TmxParser(path);
+        renderer = new TmxRenderer(parser);
+        renderer.setChunkCacheEnabled(chunkCache);
+
+        int viewWidth = (int) (SCREEN_WIDTH / ZOOM);
+        int viewHeight = (int) (SCREEN_HEIGHT / ZOOM);
+        int maxX = Math.max(0, parser.getMapWidth() * parser.getTileWidth() - viewWidth);
+        int maxY = Math.max(0, parser.getMapHeight() * parser.getTileHeight() - viewHeight);
+        view = new Rectangle((int) (maxX * position), (int) (maxY * position), viewWidth, viewHeight);
+    }
+
+    @Override
+    public Object run() {
+        Graphics2D g = screen.createGraphics();
+        g.scale(ZOOM, ZOOM);
+        g.translate(-view.x, -view.y);
+        renderer.render(g, view);
+        g.dispose();
+        return screen;
+    }
+
+    @Override
+    public void close() {
+        parser.dispose();
+    }
+}
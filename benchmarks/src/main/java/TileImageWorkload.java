@@ -0,0 +1,26 @@
+import benchmarks.Workload;
+
+// Looks up the image of every GID of a map in turn
+public class TileImageWorkload implements Workload {
+    private final TmxParser parser;
+    private final int gidCount;
+    private int gid;
+
+    public TileImageWorkload(String path) {
+        parser = new TmxParser(path);
+        gidCount = parser.getGidTable().size();
+    }
+
+    @Override
+    public Object run() {
+        if (++gid == gidCount) {
+            gid = 0;
+        }
+        return ImageUtils.getTileImage(parser, gid);
+    }
+
+    @Override
+    public void close() {
+        parser.dispose();
+    }
+}
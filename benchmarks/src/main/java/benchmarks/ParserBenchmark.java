@@ -0,0 +1,38 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Loading a map: the streaming parser, the DOM parser and the compiled .tmxb copy
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ParserBenchmark {
+    @Param({"new_test.tmx", "large_test.tmx", "med2.tmx", "med_3.tmx", "med_4.tmx", "med_5.tmx", "med_map.tmx"})
+    public String map;
+
+    @Param({"stax", "dom", "compiled"})
+    public String source;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        workload = Workload.create("ParseWorkload", "resources/assets/" + map, source);
+    }
+
+    @TearDown
+    public void tearDown() {
+        workload.close();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws Exception {
+        blackhole.consume(workload.run());
+    }
+}
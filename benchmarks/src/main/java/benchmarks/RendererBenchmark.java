@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Drawing one 800x600 frame at 2x zoom into an offscreen image, with and without the chunk cache
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RendererBenchmark {
+    @Param({"med_5.tmx", "large_test.tmx", "med_map.tmx"})
+    public String map;
+
+    // Where the camera looks, as a fraction of the map size
+    @Param({"top-left", "center", "bottom-right"})
+    public String camera;
+
+    @Param({"true", "false"})
+    public boolean chunkCache;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() throws Exception {
+        double position = camera.equals("top-left") ? 0 : camera.equals("center") ? 0.5 : 1;
+        workload = Workload.create("RenderWorkload", "resources/assets/" + map, position, chunkCache);
+    }
+
+    @TearDown
+    public void tearDown() {
+        workload.close();
+    }
+
+    @Benchmark
+    public void render(Blackhole blackhole) throws Exception {
+        blackhole.consume(workload.run());
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Per-tile lookups done while drawing: ImageUtils.getTileImage and Animation.getFrameForTime
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TileLookupBenchmark {
+    @State(Scope.Thread)
+    public static class TileImages {
+        @Param({"med_5.tmx"})
+        public String map;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workload.create("TileImageWorkload", "resources/assets/" + map);
+        }
+
+        @TearDown
+        public void tearDown() {
+            workload.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Animations {
+        // Frames per animation, the lookup is a binary search over them
+        @Param({"2", "8", "64"})
+        public int frames;
+
+        Workload workload;
+
+        @Setup
+        public void setUp() throws Exception {
+            workload = Workload.create("AnimationWorkload", frames);
+        }
+    }
+
+    @Benchmark
+    public void getTileImage(TileImages state, Blackhole blackhole) throws Exception {
+        blackhole.consume(state.workload.run());
+    }
+
+    @Benchmark
+    public void getFrameForTime(Animations state, Blackhole blackhole) throws Exception {
+        blackhole.consume(state.workload.run());
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * One operation of a benchmark. The game's classes live in the unnamed package, which
+ * code in a named package (like these JMH benchmarks) cannot refer to, and JMH can't
+ * generate benchmarks in the unnamed package. So each benchmark drives a workload class
+ * in the unnamed package that calls the game directly; every benchmark only ever sees one
+ * workload class, so the JIT inlines the call.
+ */
+public interface Workload {
+    // Runs one operation; the result goes to a Blackhole so it isn't optimized away
+    Object run() throws Exception;
+
+    // Release whatever the workload holds, e.g. maps
+    default void close() {
+    }
+
+    /**
+     * Creates a workload by class name.
+     *
+     * @param className The workload class, in the unnamed package.
+     * @param arguments The arguments of its public constructor.
+     */
+    static Workload create(String className, Object... arguments) throws Exception {
+        for (Constructor<?> constructor : Class.forName(className).getConstructors()) {
+            if (constructor.getParameterCount() == arguments.length) {
+                return (Workload) constructor.newInstance(arguments);
+            }
+        }
+        throw new IllegalArgumentException(className + " has no constructor taking " + arguments.length + " arguments");
+    }
+}
@@ -0,0 +1,63 @@
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+
+/**
+ * A Canvas drawn directly from the game loop thread through a BufferStrategy
+ * instead of going through Swing's repaint manager.
+ */
+public class ActiveRenderCanvas extends Canvas {
+    /**
+     * Draws one frame onto the canvas' back buffer.
+     */
+    public interface Painter {
+        void paint(Graphics2D g, int width, int height, float alpha);
+    }
+
+    private final Painter painter;
+    private BufferStrategy bufferStrategy;
+
+    public ActiveRenderCanvas(Painter painter) {
+        this.painter = painter;
+        setIgnoreRepaint(true);  // All painting happens in renderFrame
+        setBackground(Color.BLACK);
+    }
+
+    /**
+     * Renders and shows one frame. Called from the game loop thread; does nothing
+     * until the canvas is displayable.
+     *
+     * @param alpha The interpolation factor between the last two simulation steps.
+     */
+    public void renderFrame(float alpha) {
+        if (!isDisplayable() || getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        if (bufferStrategy == null) {
+            createBufferStrategy(2);
+            bufferStrategy = getBufferStrategy();
+        }
+
+        // Redraw until the buffer contents survive both drawing and showing
+        do {
+            do {
+                Graphics2D g = (Graphics2D) bufferStrategy.getDrawGraphics();
+                try {
+                    g.setColor(getBackground());
+                    g.fillRect(0, 0, getWidth(), getHeight());
+                    painter.paint(g, getWidth(), getHeight(), alpha);
+                } finally {
+                    g.dispose();
+                }
+            } while (bufferStrategy.contentsRestored());
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost());
+
+        Toolkit.getDefaultToolkit().sync();  // Flush the frame on platforms that buffer drawing (X11)
+    }
+
+    @Override
+    public void removeNotify() {
+        super.removeNotify();
+        bufferStrategy = null;  // The peer and its buffers are gone
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * A map asset (the map itself, a .tsx file or a tileset image) that could not be loaded.
+ * Maps still load without it, with its tiles left blank; TmxParser.getLoadErrors() lists
+ * every asset that failed.
+ */
+public class AssetLoadException extends Exception {
+    private final String path;
+
+    /**
+     * @param path  The path of the asset.
+     * @param cause Why it could not be loaded.
+     */
+    public AssetLoadException(String path, Throwable cause) {
+        super("Failed to load " + path + ": " + cause, cause);
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+}
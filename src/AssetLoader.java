@@ -0,0 +1,52 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * Runs asset loading (parsing .tsx files, decoding images) on a shared pool with one
+ * thread per core, so a map with many tilesets loads them all at once. The pool is a
+ * ForkJoinPool, so a task that waits for the assets it queued, like a map load waiting
+ * for its tilesets, lets another thread step in instead of starving the pool.
+ */
+public class AssetLoader {
+    // Number of loader threads, set with -Dtmx.loaderThreads=8
+    public static final int THREADS = Integer.getInteger("tmx.loaderThreads", Runtime.getRuntime().availableProcessors());
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(THREADS, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("asset-loader-" + thread.getPoolIndex());
+        return thread;  // Daemon, so loading never keeps the game from exiting
+    }, null, false);
+
+    // Loads an asset; failures are reported as an AssetLoadException for its path
+    public interface Task<T> {
+        T load() throws Exception;
+    }
+
+    private AssetLoader() {
+    }
+
+    /**
+     * Starts loading an asset on the loader threads.
+     *
+     * @param path The path of the asset, used to report failures.
+     * @param task Loads the asset.
+     * @return A future that completes with the asset, or fails with a CompletionException
+     * wrapping an AssetLoadException.
+     */
+    public static <T> CompletableFuture<T> load(String path, Task<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.load();
+            } catch (Exception e) {
+                throw new CompletionException(new AssetLoadException(path, e));
+            }
+        }, POOL);
+    }
+
+    public static Executor getExecutor() {
+        return POOL;
+    }
+}
@@ -0,0 +1,135 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes Tiled's base64 layer data: little-endian unsigned 32-bit GIDs, optionally
+ * zlib or gzip compressed. Uncompressed bytes are assembled into tiles as the text
+ * arrives. Compressed data is kept as bytes (a small fraction of the layer's size) and
+ * inflated straight into the tile array once the element ends, so no string or
+ * full-size byte copy of the layer is ever built.
+ */
+public class Base64TileDecoder implements TileDataDecoder {
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private final int[] tiles;
+    private final String compression;
+    private int index;
+
+    // Base64 state: pending bits that do not form a whole byte yet
+    private int bitBuffer;
+    private int bitCount;
+    private boolean ended;
+
+    // Little-endian GID being assembled from single bytes
+    private int gid;
+    private int gidBytes;
+
+    // Compressed payload, inflated in finish()
+    private byte[] compressed;
+    private int compressedLength;
+
+    /**
+     * @param tileCount   The number of tiles in the layer (width * height).
+     * @param compression null/empty for raw data, "zlib" or "gzip".
+     */
+    public Base64TileDecoder(int tileCount, String compression) {
+        if (compression != null && !compression.isEmpty() && !compression.equals("zlib") && !compression.equals("gzip")) {
+            throw new IllegalArgumentException("Unsupported layer compression: " + compression);
+        }
+        this.tiles = new int[tileCount];
+        this.compression = compression == null || compression.isEmpty() ? null : compression;
+        if (this.compression != null) {
+            this.compressed = new byte[Math.max(64, tileCount / 4)];
+        }
+    }
+
+    /**
+     * Decodes the next piece of base64 text. Whitespace and line breaks are ignored, and a
+     * group of four characters may be split across two pieces.
+     */
+    @Override
+    public void feed(char[] text, int start, int length) {
+        for (int i = start, end = start + length; i < end && !ended; i++) {
+            char c = text[i];
+            if (c == '=') {
+                ended = true;  // Padding: the remaining bits are not data
+                break;
+            }
+            int value = c < 128 ? BASE64_VALUES[c] : -1;
+            if (value < 0) {
+                continue;
+            }
+            bitBuffer = (bitBuffer << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                acceptByte((bitBuffer >>> bitCount) & 0xFF);
+            }
+        }
+    }
+
+    private void acceptByte(int b) {
+        if (compression == null) {
+            storeByte(b);
+            return;
+        }
+        if (compressedLength == compressed.length) {
+            compressed = Arrays.copyOf(compressed, compressed.length * 2);
+        }
+        compressed[compressedLength++] = (byte) b;
+    }
+
+    private void storeByte(int b) {
+        gid |= b << (gidBytes * 8);
+        if (++gidBytes == 4) {
+            if (index < tiles.length) {
+                tiles[index] = gid;  // GIDs are unsigned 32-bit, flip flags end up in the sign bit
+            }
+            index++;
+            gid = 0;
+            gidBytes = 0;
+        }
+    }
+
+    /**
+     * @return The decoded tiles; missing trailing tiles are left empty.
+     * @throws IOException If the compressed data is corrupt.
+     */
+    @Override
+    public int[] finish() throws IOException {
+        if (compression != null) {
+            inflate();
+        }
+        if (index != tiles.length || gidBytes != 0) {
+            System.err.println("Layer data has " + index + " tiles, expected " + tiles.length);
+        }
+        return tiles;
+    }
+
+    // Run the payload through the decompressor, assembling tiles from its output buffer
+    private void inflate() throws IOException {
+        InputStream source = new ByteArrayInputStream(compressed, 0, compressedLength);
+        byte[] buffer = new byte[8192];
+        try (InputStream in = compression.equals("gzip") ? new GZIPInputStream(source, buffer.length) : new InflaterInputStream(source)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    storeByte(buffer[i] & 0xFF);
+                }
+            }
+        }
+        compressed = null;
+    }
+}
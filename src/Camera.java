@@ -2,6 +2,8 @@ import java.awt.*;
 
 public class Camera {
     private int x, y;  // Camera position
+    private int previousX, previousY;  // Position before the last update, for interpolation
+    private float renderX, renderY;  // Interpolated position used for drawing
     private int width, height;  // Viewport size (screen dimensions)
     private float zoomLevel;  // Zoom level (default = 1.0f)
 
@@ -13,6 +15,9 @@ public class Camera {
 
     // Update the camera to follow the character
     public void update(Character character, int mapWidth, int mapHeight) {
+        previousX = x;
+        previousY = y;
+
         // Center the camera on the character
         x = (int) (character.getX() - width / (2 * zoomLevel));
         y = (int) (character.getY() - height / (2 * zoomLevel));
@@ -20,12 +25,58 @@ public class Camera {
         // Clamp the camera within the bounds of the map
         x = Math.max(0, Math.min(x, mapWidth - (int) (width / zoomLevel)));
         y = Math.max(0, Math.min(y, mapHeight - (int) (height / zoomLevel)));
+
+        renderX = x;
+        renderY = y;
+    }
+
+    // Place the drawing position between the previous and the current position (alpha from 0 to 1)
+    public void interpolate(float alpha) {
+        renderX = previousX + (x - previousX) * alpha;
+        renderY = previousY + (y - previousY) * alpha;
     }
 
     // Apply the camera transform (translation + zoom)
     public void applyTransform(Graphics2D g2d) {
         g2d.scale(zoomLevel, zoomLevel);
-        g2d.translate(-x, -y);
+        g2d.translate(-renderX, -renderY);
+    }
+
+    // Resize the viewport, e.g. when the window size changes
+    public void setViewportSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    // Width of the visible world area in map pixels
+    public int getViewWidth() {
+        return (int) Math.ceil(width / zoomLevel);
+    }
+
+    // Height of the visible world area in map pixels
+    public int getViewHeight() {
+        return (int) Math.ceil(height / zoomLevel);
+    }
+
+    // Whether the last update moved the camera, so everything on screen shifted
+    public boolean hasMoved() {
+        return x != previousX || y != previousY;
+    }
+
+    // The screen pixels covering a rectangle of the map (in map pixels), at the current drawing position
+    public Rectangle toScreen(float mapX, float mapY, float mapWidth, float mapHeight) {
+        int left = (int) Math.floor((mapX - renderX) * zoomLevel);
+        int top = (int) Math.floor((mapY - renderY) * zoomLevel);
+        int right = (int) Math.ceil((mapX + mapWidth - renderX) * zoomLevel);
+        int bottom = (int) Math.ceil((mapY + mapHeight - renderY) * zoomLevel);
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+
+    // The rectangle of the map (in map pixels) currently shown on screen
+    public Rectangle getVisibleBounds() {
+        int left = (int) Math.floor(renderX);
+        int top = (int) Math.floor(renderY);
+        return new Rectangle(left, top, getViewWidth() + 1, getViewHeight() + 1);  // +1 covers the fractional offset
     }
 
     // Getters for the camera's position
@@ -1,13 +1,10 @@
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import javax.imageio.ImageIO;
-import javax.swing.*;
-import java.io.File;
-import java.io.IOException;
-import java.util.List;
 
 public class Character {
     private int x, y;
+    private int previousX, previousY;  // Position at the last simulation step, for interpolation
+    private float remainderX, remainderY;  // Movement of less than a pixel, carried over to the next step
     private BufferedImage sprite;
     private int width, height;
     private int health;
@@ -17,49 +14,75 @@ public class Character {
     public Character(String spritePath, int startX, int startY, int width, int height) {
         this.x = startX;
         this.y = startY;
+        this.previousX = startX;
+        this.previousY = startY;
         this.width = width;
         this.height = height;
         this.health = MAX_HEALTH;  // Starting health
 
-        try {
-            sprite = ImageIO.read(new File(spritePath));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        sprite = ImageUtils.loadImage(spritePath);  // Cached, so respawning doesn't read the file again
     }
 
     public void draw(Graphics g) {
         g.drawImage(sprite, x, y, width, height, null);
     }
 
-    public void move(int dx, int dy, TmxParser parser, JFrame parentFrame, Question question, List<Question> questions) {
-        int oldX = x;
-        int oldY = y;
+    // Draw between the position at the last simulation step and the current one (alpha from 0 to 1)
+    public void draw(Graphics g, float alpha) {
+        int drawX = Math.round(previousX + (x - previousX) * alpha);
+        int drawY = Math.round(previousY + (y - previousY) * alpha);
+        g.drawImage(sprite, drawX, drawY, width, height, null);
+    }
 
+    // Whether the character moved since the last savePosition()
+    public boolean hasMoved() {
+        return x != previousX || y != previousY;
+    }
 
-        // Check for collisions before moving
-        boolean collidedWithWall = CollisionDetector.checkCollisions(this, parser, parentFrame, questions);
-        // If the player collided with a wall, revert the movement
-        if (collidedWithWall) {
-            x = oldX - 2;
-            y = oldY - 2;
-            return;  // Stop further processing if a wall is hit
-        } else {
-            // Move the character to the new position
-            x += dx;
-            y += dy;
-        }
-        // Check for collisions after moving
-      //  boolean collidedWithWall = CollisionDetector.checkCollisions(this, parser, parentFrame, questions);
+    public int getPreviousX() {
+        return previousX;
+    }
 
-        // If the player collided with a wall, revert the movement
-//if (collidedWithWall) {
-  //          x = oldX;
-    //        y = oldY;
-      //      return;  // Stop further processing if a wall is hit
-        //}
+    public int getPreviousY() {
+        return previousY;
     }
 
+    // Remember the current position as the start of the next simulation step
+    public void savePosition() {
+        previousX = x;
+        previousY = y;
+    }
+
+    /**
+     * Moves by a distance that may include fractions of a pixel, stopping flush against
+     * walls. Whole pixels are moved now and the fraction is carried over, so slow speeds
+     * and diagonals still add up to the right distance over several steps.
+     *
+     * @return Whether the character moved.
+     */
+    public boolean moveBy(float dx, float dy, CollisionMask mask) {
+        remainderX += dx;
+        remainderY += dy;
+        int stepX = (int) remainderX;
+        int stepY = (int) remainderY;
+        remainderX -= stepX;
+        remainderY -= stepY;
+
+        int startX = x, startY = y;
+        if (stepX != 0) {
+            x = mask.sweepX(x, y, width, height, stepX);
+            if (x != startX + stepX) {
+                remainderX = 0;  // Blocked, don't creep into the wall later
+            }
+        }
+        if (stepY != 0) {
+            y = mask.sweepY(x, y, width, height, stepY);
+            if (y != startY + stepY) {
+                remainderY = 0;
+            }
+        }
+        return x != startX || y != startY;
+    }
 
     // Getters and setters for position and attributes
     public int getX() {
@@ -0,0 +1,188 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the static tiles of tile layers as pre-rendered offscreen chunks of
+ * CHUNK_SIZE x CHUNK_SIZE tiles. Chunks are rasterized on first use and then blitted
+ * as a single image; they are only redrawn when a tile inside them changes. Animated
+ * cells are left out of the chunks and drawn on top by TmxRenderer every frame.
+ * Least-recently-used chunks are evicted once the cached images exceed the memory budget.
+ */
+public class ChunkCache {
+    public static final int CHUNK_SIZE = 16;  // Chunk edge length in tiles
+    public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    private final GidTable gidTable;
+    private final int tileWidth, tileHeight;
+    private final long budgetBytes;
+    private long usedBytes;
+    private long hits, misses;  // Chunks blitted as cached, and chunks that had to be rasterized
+
+    // Access-ordered, so iteration starts at the least recently used chunk
+    private final LinkedHashMap<Long, Chunk> chunks = new LinkedHashMap<>(64, 0.75f, true);
+
+    private static class Chunk {
+        BufferedImage image;
+        boolean dirty;
+    }
+
+    /**
+     * @param gidTable    The table used to resolve tile images.
+     * @param tileWidth   The map's tile width in pixels.
+     * @param tileHeight  The map's tile height in pixels.
+     * @param budgetBytes The maximum memory used by cached chunk images.
+     */
+    public ChunkCache(GidTable gidTable, int tileWidth, int tileHeight, long budgetBytes) {
+        this.gidTable = gidTable;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Draws the chunks of a layer that overlap the given (inclusive) tile range.
+     *
+     * @param g          The graphics context in map coordinates.
+     * @param layerIndex The index of the layer in the map.
+     * @param layer      The layer to draw.
+     * @param startX     First visible tile column.
+     * @param startY     First visible tile row.
+     * @param endX       Last visible tile column.
+     * @param endY       Last visible tile row.
+     */
+    public void render(Graphics g, int layerIndex, TmxParser.Layer layer, int startX, int startY, int endX, int endY) {
+        for (int chunkY = startY / CHUNK_SIZE; chunkY <= endY / CHUNK_SIZE; chunkY++) {
+            for (int chunkX = startX / CHUNK_SIZE; chunkX <= endX / CHUNK_SIZE; chunkX++) {
+                Chunk chunk = getChunk(layerIndex, layer, chunkX, chunkY);
+                g.drawImage(chunk.image, chunkX * CHUNK_SIZE * tileWidth, chunkY * CHUNK_SIZE * tileHeight, null);
+            }
+        }
+    }
+
+    /**
+     * Marks the chunk containing a tile for redrawing.
+     *
+     * @param layerIndex The index of the layer in the map.
+     * @param x          The tile column.
+     * @param y          The tile row.
+     */
+    public void invalidateTile(int layerIndex, int x, int y) {
+        Chunk chunk = chunks.get(key(layerIndex, x / CHUNK_SIZE, y / CHUNK_SIZE));
+        if (chunk != null) {
+            chunk.dirty = true;
+        }
+    }
+
+    /**
+     * Marks every chunk overlapping a block of tiles for redrawing.
+     *
+     * @param layerIndex The index of the layer in the map.
+     * @param x          Leftmost tile column of the block.
+     * @param y          Top tile row of the block.
+     * @param width      Block width in tiles.
+     * @param height     Block height in tiles.
+     */
+    public void invalidateRegion(int layerIndex, int x, int y, int width, int height) {
+        for (int chunkY = Math.max(0, y) / CHUNK_SIZE; chunkY <= Math.max(0, y + height - 1) / CHUNK_SIZE; chunkY++) {
+            for (int chunkX = Math.max(0, x) / CHUNK_SIZE; chunkX <= Math.max(0, x + width - 1) / CHUNK_SIZE; chunkX++) {
+                Chunk chunk = chunks.get(key(layerIndex, chunkX, chunkY));
+                if (chunk != null) {
+                    chunk.dirty = true;
+                }
+            }
+        }
+    }
+
+    // Drop every cached chunk, e.g. after the tile images changed
+    public void clear() {
+        chunks.clear();
+        usedBytes = 0;
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    private Chunk getChunk(int layerIndex, TmxParser.Layer layer, int chunkX, int chunkY) {
+        long key = key(layerIndex, chunkX, chunkY);
+        Chunk chunk = chunks.get(key);
+
+        if (chunk == null) {
+            int columns = Math.min(CHUNK_SIZE, layer.width - chunkX * CHUNK_SIZE);
+            int rows = Math.min(CHUNK_SIZE, layer.height - chunkY * CHUNK_SIZE);
+            chunk = new Chunk();
+            chunk.image = ImageUtils.createCompatibleImage(columns * tileWidth, rows * tileHeight);
+            long bytes = imageBytes(chunk.image);
+
+            evictUntilFits(bytes);
+            chunks.put(key, chunk);
+            usedBytes += bytes;
+            rasterize(chunk, layer, chunkX, chunkY);
+            misses++;
+        } else if (chunk.dirty) {
+            rasterize(chunk, layer, chunkX, chunkY);
+            misses++;
+        } else {
+            hits++;
+        }
+        return chunk;
+    }
+
+    private void rasterize(Chunk chunk, TmxParser.Layer layer, int chunkX, int chunkY) {
+        Graphics2D g = chunk.image.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, chunk.image.getWidth(), chunk.image.getHeight());
+        g.setComposite(AlphaComposite.SrcOver);
+
+        int originX = chunkX * CHUNK_SIZE;
+        int originY = chunkY * CHUNK_SIZE;
+        int columns = chunk.image.getWidth() / tileWidth;
+        int rows = chunk.image.getHeight() / tileHeight;
+
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                int gid = layer.getTile(originX + x, originY + y);
+                if (gid == 0 || gidTable.getAnimation(gid) != null) {
+                    continue;  // Empty, or drawn every frame from the animated cell index
+                }
+
+                gidTable.drawTile(g, gid, x * tileWidth, y * tileHeight, tileWidth, tileHeight);
+            }
+        }
+        g.dispose();
+
+        chunk.dirty = false;
+    }
+
+    private void evictUntilFits(long bytes) {
+        Iterator<Map.Entry<Long, Chunk>> iterator = chunks.entrySet().iterator();
+        while (usedBytes + bytes > budgetBytes && iterator.hasNext()) {
+            Chunk eldest = iterator.next().getValue();
+            usedBytes -= imageBytes(eldest.image);
+            iterator.remove();
+        }
+    }
+
+    private static long imageBytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+
+    private static long key(int layerIndex, int chunkX, int chunkY) {
+        return ((long) layerIndex << 48) | ((long) chunkY << 24) | chunkX;
+    }
+}
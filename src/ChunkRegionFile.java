@@ -0,0 +1,158 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Temporary file holding the tiles of an infinite map, split into fixed-size chunks on a
+ * grid. The parser spills every chunk here as it reads the map, so the map never has to
+ * fit in memory; ChunkStreamer reads chunks back on demand. Chunks are addressed by layer
+ * and grid position in Tiled's own (possibly negative) chunk coordinates. Reads and
+ * writes use positional file access and may come from different threads.
+ */
+public class ChunkRegionFile {
+    private final int chunkWidth, chunkHeight;
+    private final int chunkBytes;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final Map<Long, Long> offsets = new ConcurrentHashMap<>();  // Chunk key -> position in the file
+    private long length;
+
+    /**
+     * Creates an empty region file in the temporary directory.
+     *
+     * @param chunkWidth  Chunk width in tiles.
+     * @param chunkHeight Chunk height in tiles.
+     */
+    public ChunkRegionFile(int chunkWidth, int chunkHeight) throws IOException {
+        this.chunkWidth = chunkWidth;
+        this.chunkHeight = chunkHeight;
+        this.chunkBytes = chunkWidth * chunkHeight * 4;
+        this.file = File.createTempFile("tmx-chunks-", ".bin");
+        this.file.deleteOnExit();
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * Stores a block of tiles at any position and size. The block is split along the chunk
+     * grid; chunks it only partly covers keep their other tiles.
+     *
+     * @param layerIndex The index of the layer in the map.
+     * @param x          Leftmost tile column of the block.
+     * @param y          Top tile row of the block.
+     * @param width      Block width in tiles.
+     * @param height     Block height in tiles.
+     * @param tiles      Row-major GIDs of the block.
+     */
+    public void writeRegion(int layerIndex, int x, int y, int width, int height, int[] tiles) throws IOException {
+        for (int chunkY = Math.floorDiv(y, chunkHeight); chunkY <= Math.floorDiv(y + height - 1, chunkHeight); chunkY++) {
+            for (int chunkX = Math.floorDiv(x, chunkWidth); chunkX <= Math.floorDiv(x + width - 1, chunkWidth); chunkX++) {
+                int left = chunkX * chunkWidth;
+                int top = chunkY * chunkHeight;
+                boolean covered = x <= left && y <= top && x + width >= left + chunkWidth && y + height >= top + chunkHeight;
+
+                int[] chunk = covered ? null : read(layerIndex, chunkX, chunkY);
+                if (chunk == null) {
+                    chunk = new int[chunkWidth * chunkHeight];
+                }
+                int fromX = Math.max(x, left);
+                int toX = Math.min(x + width, left + chunkWidth);
+                for (int row = Math.max(y, top); row < Math.min(y + height, top + chunkHeight); row++) {
+                    System.arraycopy(tiles, (row - y) * width + (fromX - x), chunk, (row - top) * chunkWidth + (fromX - left), toX - fromX);
+                }
+                write(layerIndex, chunkX, chunkY, chunk);
+            }
+        }
+    }
+
+    /**
+     * Stores one whole chunk, replacing its previous contents.
+     *
+     * @param tiles Row-major GIDs, chunkWidth * chunkHeight of them.
+     */
+    public void write(int layerIndex, int chunkX, int chunkY, int[] tiles) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(chunkBytes);
+        buffer.asIntBuffer().put(tiles, 0, chunkWidth * chunkHeight);
+        long position = offsets.computeIfAbsent(key(layerIndex, chunkX, chunkY), key -> allocate());
+        channel.write(buffer, position);
+    }
+
+    /**
+     * Reads one chunk.
+     *
+     * @return Row-major GIDs, or null if the map has no chunk there.
+     */
+    public int[] read(int layerIndex, int chunkX, int chunkY) throws IOException {
+        Long position = offsets.get(key(layerIndex, chunkX, chunkY));
+        if (position == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(chunkBytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Chunk region file is truncated");
+            }
+        }
+        buffer.flip();
+        int[] tiles = new int[chunkWidth * chunkHeight];
+        buffer.asIntBuffer().get(tiles);
+        return tiles;
+    }
+
+    public boolean contains(int layerIndex, int chunkX, int chunkY) {
+        return offsets.containsKey(key(layerIndex, chunkX, chunkY));
+    }
+
+    private synchronized long allocate() {
+        long position = length;
+        length += chunkBytes;
+        return position;
+    }
+
+    // Close and delete the file
+    public void close() {
+        try {
+            channel.close();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        file.delete();
+    }
+
+    public int getChunkWidth() {
+        return chunkWidth;
+    }
+
+    public int getChunkHeight() {
+        return chunkHeight;
+    }
+
+    // Bytes taken by one chunk once it is loaded into memory
+    public int getChunkBytes() {
+        return chunkBytes;
+    }
+
+    public int getChunkCount() {
+        return offsets.size();
+    }
+
+    static long key(int layerIndex, int chunkX, int chunkY) {
+        return ((long) layerIndex << 48) | ((chunkY & 0xFFFFFFL) << 24) | (chunkX & 0xFFFFFFL);
+    }
+
+    // Chunk column of a key (24-bit signed)
+    static int keyX(long key) {
+        return ((int) key << 8) >> 8;
+    }
+
+    // Chunk row of a key (24-bit signed)
+    static int keyY(long key) {
+        return ((int) (key >>> 24) << 8) >> 8;
+    }
+}
@@ -0,0 +1,234 @@
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the chunks of an infinite map's layers loaded around the camera. Every update
+ * requests the chunks in and around the view from a background thread, reaching further
+ * ahead in the direction the camera is moving, and evicts the chunks furthest behind it
+ * once the loaded chunks exceed the memory budget. Chunks in view are never evicted.
+ *
+ * update() must be called on the thread that renders the map: loaded chunks are only
+ * installed into the layers there, so rendering never sees a layer change mid-frame.
+ */
+public class ChunkStreamer {
+    public static final long DEFAULT_BUDGET_BYTES = 32L * 1024 * 1024;
+    private static final int PREFETCH_MARGIN_CHUNKS = 1;  // Chunks loaded on every side of the view
+    private static final int LOOKAHEAD_UPDATES = 30;  // How many updates of camera movement to load ahead
+
+    // Told when loaded tiles appear in a layer, e.g. to redraw cached chunk images
+    public interface Listener {
+        void tilesLoaded(int layerIndex, int x, int y, int width, int height);
+    }
+
+    private static class LoadedChunk {
+        final TmxParser.ChunkedLayer layer;
+        final int chunkX, chunkY;
+        final int[] tiles;  // Null if the chunk could not be read
+
+        LoadedChunk(TmxParser.ChunkedLayer layer, int chunkX, int chunkY, int[] tiles) {
+            this.layer = layer;
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+            this.tiles = tiles;
+        }
+    }
+
+    private final TmxParser parser;
+    private final ChunkRegionFile regionFile;
+    private final List<TmxParser.ChunkedLayer> layers = new ArrayList<>();
+    private final long budgetBytes;
+    private Listener listener;
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chunk-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Queue<LoadedChunk> loaded = new ConcurrentLinkedQueue<>();  // Filled by the loader thread
+    private final Set<Long> pending = new HashSet<>();  // Keys requested but not installed yet
+
+    private Rectangle lastView;
+    private int movementX, movementY;  // Camera movement during the last update, in map pixels
+
+    /**
+     * @param parser      An infinite map.
+     * @param budgetBytes The memory loaded chunks may use before chunks outside the view are evicted.
+     */
+    public ChunkStreamer(TmxParser parser, long budgetBytes) {
+        this.parser = parser;
+        this.regionFile = parser.getChunkRegionFile();
+        this.budgetBytes = budgetBytes;
+        for (TmxParser.Layer layer : parser.getLayers()) {
+            if (layer instanceof TmxParser.ChunkedLayer) {
+                layers.add((TmxParser.ChunkedLayer) layer);
+            }
+        }
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Loads the chunks in view right away, e.g. before the first frame of a map.
+     *
+     * @param view The visible map area in map pixels.
+     */
+    public void loadVisible(Rectangle view) {
+        if (regionFile == null) {
+            return;
+        }
+        Rectangle chunks = chunkRange(view, 0);
+        for (TmxParser.ChunkedLayer layer : layers) {
+            for (int chunkY = chunks.y; chunkY < chunks.y + chunks.height; chunkY++) {
+                for (int chunkX = chunks.x; chunkX < chunks.x + chunks.width; chunkX++) {
+                    if (!layer.isLoaded(chunkX, chunkY) && regionFile.contains(layer.index, chunkX, chunkY)) {
+                        install(new LoadedChunk(layer, chunkX, chunkY, read(layer, chunkX, chunkY)));
+                    }
+                }
+            }
+        }
+        lastView = new Rectangle(view);
+    }
+
+    /**
+     * Installs chunks the loader finished, requests the chunks around the view and evicts
+     * chunks behind it if over budget. Call once per game update.
+     *
+     * @param view The visible map area in map pixels.
+     */
+    public void update(Rectangle view) {
+        if (regionFile == null) {
+            return;
+        }
+        LoadedChunk chunk;
+        while ((chunk = loaded.poll()) != null) {
+            install(chunk);
+        }
+
+        if (lastView != null) {
+            movementX = view.x - lastView.x;
+            movementY = view.y - lastView.y;
+        }
+        lastView = new Rectangle(view);
+
+        // Stretch the area to load towards where the camera is heading
+        Rectangle ahead = new Rectangle(view);
+        ahead.add(new Rectangle(view.x + movementX * LOOKAHEAD_UPDATES, view.y + movementY * LOOKAHEAD_UPDATES, view.width, view.height));
+        Rectangle wanted = chunkRange(ahead, PREFETCH_MARGIN_CHUNKS);
+
+        for (TmxParser.ChunkedLayer layer : layers) {
+            for (int chunkY = wanted.y; chunkY < wanted.y + wanted.height; chunkY++) {
+                for (int chunkX = wanted.x; chunkX < wanted.x + wanted.width; chunkX++) {
+                    if (!layer.isLoaded(chunkX, chunkY) && regionFile.contains(layer.index, chunkX, chunkY)
+                            && pending.add(ChunkRegionFile.key(layer.index, chunkX, chunkY))) {
+                        requestLoad(layer, chunkX, chunkY);
+                    }
+                }
+            }
+        }
+
+        evictOverBudget(view, wanted);
+    }
+
+    private void requestLoad(TmxParser.ChunkedLayer layer, int chunkX, int chunkY) {
+        loader.execute(() -> loaded.add(new LoadedChunk(layer, chunkX, chunkY, read(layer, chunkX, chunkY))));
+    }
+
+    private int[] read(TmxParser.ChunkedLayer layer, int chunkX, int chunkY) {
+        try {
+            return regionFile.read(layer.index, chunkX, chunkY);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void install(LoadedChunk chunk) {
+        pending.remove(ChunkRegionFile.key(chunk.layer.index, chunk.chunkX, chunk.chunkY));
+        if (chunk.tiles == null || chunk.layer.isLoaded(chunk.chunkX, chunk.chunkY)) {
+            return;  // Unreadable, or already loaded because a tile in it was changed
+        }
+        chunk.layer.install(chunk.chunkX, chunk.chunkY, chunk.tiles);
+
+        if (listener != null) {
+            int chunkWidth = regionFile.getChunkWidth();
+            int chunkHeight = regionFile.getChunkHeight();
+            listener.tilesLoaded(chunk.layer.index, chunk.chunkX * chunkWidth - parser.getOriginX(),
+                    chunk.chunkY * chunkHeight - parser.getOriginY(), chunkWidth, chunkHeight);
+        }
+    }
+
+    // Evict the loaded chunks furthest from the view until the budget is met, keeping the wanted ones
+    private void evictOverBudget(Rectangle view, Rectangle wanted) {
+        long usedBytes = getLoadedBytes();
+        if (usedBytes <= budgetBytes) {
+            return;
+        }
+
+        double centerX = (view.getCenterX() / parser.getTileWidth() + parser.getOriginX()) / regionFile.getChunkWidth();
+        double centerY = (view.getCenterY() / parser.getTileHeight() + parser.getOriginY()) / regionFile.getChunkHeight();
+        List<long[]> candidates = new ArrayList<>();  // {layer position, key, squared distance}
+        for (int i = 0; i < layers.size(); i++) {
+            for (long key : layers.get(i).getLoadedChunks()) {
+                int chunkX = ChunkRegionFile.keyX(key);
+                int chunkY = ChunkRegionFile.keyY(key);
+                if (!wanted.contains(chunkX, chunkY)) {
+                    double dx = chunkX + 0.5 - centerX;
+                    double dy = chunkY + 0.5 - centerY;
+                    candidates.add(new long[]{i, key, (long) (dx * dx + dy * dy)});
+                }
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(b[2], a[2]));
+
+        for (long[] candidate : candidates) {
+            if (usedBytes <= budgetBytes) {
+                break;
+            }
+            TmxParser.ChunkedLayer layer = layers.get((int) candidate[0]);
+            if (layer.evict(ChunkRegionFile.keyX(candidate[1]), ChunkRegionFile.keyY(candidate[1]))) {
+                usedBytes -= regionFile.getChunkBytes();
+            }
+        }
+    }
+
+    // Chunks (in Tiled's chunk grid) overlapping a map pixel area, plus a margin
+    private Rectangle chunkRange(Rectangle area, int margin) {
+        int chunkPixelWidth = regionFile.getChunkWidth() * parser.getTileWidth();
+        int chunkPixelHeight = regionFile.getChunkHeight() * parser.getTileHeight();
+        int originX = parser.getOriginX() * parser.getTileWidth();
+        int originY = parser.getOriginY() * parser.getTileHeight();
+        int firstX = Math.floorDiv(area.x + originX, chunkPixelWidth) - margin;
+        int firstY = Math.floorDiv(area.y + originY, chunkPixelHeight) - margin;
+        int lastX = Math.floorDiv(area.x + area.width + originX, chunkPixelWidth) + margin;
+        int lastY = Math.floorDiv(area.y + area.height + originY, chunkPixelHeight) + margin;
+        return new Rectangle(firstX, firstY, lastX - firstX + 1, lastY - firstY + 1);
+    }
+
+    // Memory used by the loaded chunks of all layers
+    public long getLoadedBytes() {
+        long count = 0;
+        for (TmxParser.ChunkedLayer layer : layers) {
+            count += layer.getLoadedChunks().size();
+        }
+        return regionFile == null ? 0 : count * regionFile.getChunkBytes();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    // Stop the loader thread; chunks already loaded stay usable
+    public void shutdown() {
+        loader.shutdownNow();
+    }
+}
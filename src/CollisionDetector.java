@@ -1,63 +1,112 @@
-import java.awt.*;
-import java.util.Iterator;
 import javax.swing.*;
+import java.util.Arrays;
 import java.util.List;
 
 public class CollisionDetector {
+    static final int APPLE_HEALTH = 10;  // Health restored by an apple
 
-    public static boolean checkCollisions(Character character, TmxParser parser, JFrame parentFrame, List<Question> questions) {
-        boolean collidedWithWall = false;  // Flag to track if character collides with a wall
+    // Reused between calls; collision checks only run on the thread that drives the game, under the
+    // game lock. Fights are shown later on the EDT and don't touch it
+    private static int[] candidates = new int[16];
 
-        for (TmxParser.ObjectLayer objectLayer : parser.getObjectLayers()) {
-            Iterator<TmxParser.MapObject> iterator = objectLayer.getObjects().iterator();
-            while (iterator.hasNext()) {
-                TmxParser.MapObject mapObject = iterator.next();
+    /**
+     * Handles the objects the character touches: picks up apples, but leaves fights to the
+     * caller, e.g. so a game loop thread can start them on the EDT. Walls are resolved by
+     * CollisionMask during movement.
+     *
+     * @return The first enemy touched, or -1 if none.
+     */
+    public static int collectPickups(Character character, TmxParser parser, FrameStats frameStats) {
+        ObjectStore objects = parser.getObjectStore();
+        int touched = findTouched(character, parser, frameStats);
 
-                // Handle apple collision
-                if (mapObject.name.equals("apple") && isColliding(character, mapObject)) {
-                    handleAppleCollision(character, mapObject, iterator);
-                }
+        int enemy = -1;
+        for (int i = 0; i < touched; i++) {
+            int handle = candidates[i];
+            int flags = objects.getFlags(handle);
+            if ((flags & ObjectStore.FLAG_PICKUP) != 0) {
+                handleAppleCollision(character, objects, handle);
+            } else if ((flags & ObjectStore.FLAG_ENEMY) != 0 && enemy < 0) {
+                enemy = handle;
+            }
+        }
+        return enemy;
+    }
 
-                // Handle wall collision
-                if (mapObject.name.equals("wall") && isColliding(character, mapObject)) {
-                    collidedWithWall = true;  // Character collided with a wall
-                }
+    // Copy the live objects the character touches into candidates, in the order the index returns them
+    private static int findTouched(Character character, TmxParser parser, FrameStats frameStats) {
+        GameEvents.CollisionCheck event = new GameEvents.CollisionCheck();
+        event.begin();
+        long start = frameStats.start();
+        ObjectStore objects = parser.getObjectStore();
 
-                // Handle enemy collision
-                if (mapObject.isEnemy() && isColliding(character, mapObject)) {
-                    handleEnemyCollision(character, mapObject, parentFrame, iterator, parser, questions);
-                }
+        // Only test the objects in the grid cells the character overlaps. The touched handles are
+        // copied because picking up an apple removes it from the index the results come from.
+        SpatialHash index = objects.getIndex();
+        int count = index.query(character.getX(), character.getY(), character.getWidth(), character.getHeight());
+        if (count > candidates.length) {
+            candidates = Arrays.copyOf(candidates, Math.max(count, candidates.length * 2));
+        }
+        int touched = 0;
+        for (int i = 0; i < count; i++) {
+            int handle = index.getResult(i);
+            if (objects.isAlive(handle) && isColliding(character, objects, handle)) {
+                candidates[touched++] = handle;
             }
         }
-        return collidedWithWall;  // Return if character hit a wall
+        frameStats.stop(FrameStats.COLLISION, start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.map = parser.getPath();
+            event.x = character.getX();
+            event.y = character.getY();
+            event.objectsTested = count;
+            event.hits = touched;
+            event.commit();
+        }
+        return touched;
     }
 
     // Handle apple collision and health increment
-    private static void handleAppleCollision(Character character, TmxParser.MapObject mapObject, Iterator<TmxParser.MapObject> iterator) {
-        character.addHealth(10);  // Increase health by 10
+    private static void handleAppleCollision(Character character, ObjectStore objects, int handle) {
+        character.addHealth(APPLE_HEALTH);
         System.out.println("Collected an apple! Health: " + character.getHealth());
-        iterator.remove();  // Remove apple from the map
+        objects.remove(handle);  // Remove apple from the map
     }
 
-    // Handle enemy collision and trigger fight screen with questions
-    private static void handleEnemyCollision(Character character, TmxParser.MapObject enemy, JFrame parentFrame, Iterator<TmxParser.MapObject> iterator, TmxParser parser, List<Question> questions) {
+    /**
+     * Shows the fight screen for an enemy and waits until it closes. Call on the EDT.
+     *
+     * @return Whether the player won; the caller removes the enemy.
+     */
+    public static boolean fight(Character character, TmxParser parser, int handle, JFrame parentFrame, List<Question> questions) {
         // Start the fight screen, passing the parser for animations and questions for combat
-        FightScreen fightScreen = new FightScreen(parentFrame, character, enemy, parser, questions);
+        FightScreen fightScreen = new FightScreen(parentFrame, character, parser.getObjectStore().getObject(handle), parser, questions);
         fightScreen.setVisible(true);
 
-        // After the fight, if the player wins, remove the enemy from the map
         if (fightScreen.isFightWon()) {
-            iterator.remove();  // Remove enemy after the fight
             System.out.println("You defeated the enemy!");
-        } else {
-            System.out.println("You lost the fight!");
+            return true;
         }
+        System.out.println("You lost the fight!");
+        return false;
     }
 
-    // Check if character is colliding with an object
-    private static boolean isColliding(Character character, TmxParser.MapObject object) {
-        Rectangle charBounds = new Rectangle(character.getX(), character.getY(), character.getWidth(), character.getHeight());
-        Rectangle objectBounds = new Rectangle((int) object.x, (int) object.y, (int) object.width, (int) object.height);
-        return charBounds.intersects(objectBounds);
+    // Check if character is colliding with an object (same rules as Rectangle.intersects, without allocating)
+    static boolean isColliding(Character character, ObjectStore objects, int handle) {
+        int charX = character.getX();
+        int charY = character.getY();
+        int charWidth = character.getWidth();
+        int charHeight = character.getHeight();
+        int objectX = (int) objects.getX(handle);
+        int objectY = (int) objects.getY(handle);
+        int objectWidth = (int) objects.getWidth(handle);
+        int objectHeight = (int) objects.getHeight(handle);
+
+        if (charWidth <= 0 || charHeight <= 0 || objectWidth <= 0 || objectHeight <= 0) {
+            return false;
+        }
+        return objectX < charX + charWidth && charX < objectX + objectWidth
+                && objectY < charY + charHeight && charY < objectY + objectHeight;
     }
 }
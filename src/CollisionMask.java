@@ -0,0 +1,188 @@
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Static map geometry (the solid "wall" objects) rasterized into a grid of small square
+ * cells, one bit per cell. Rectangles, polygons and rotated objects are all rasterized
+ * from their real outline, so movement can be resolved against the mask with a few bit
+ * tests and no object scan. Cells outside the map are never solid.
+ */
+public class CollisionMask {
+    private final int cellSize;
+    private final int columns, rows;
+    private final int wordsPerRow;
+    private final long[] bits;
+
+    /**
+     * Rasterizes the solid objects of a map.
+     *
+     * @param objects   The compiled map objects.
+     * @param mapWidth  Map width in pixels.
+     * @param mapHeight Map height in pixels.
+     * @param cellSize  Edge length of a mask cell in pixels.
+     */
+    public CollisionMask(ObjectStore objects, int mapWidth, int mapHeight, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (mapWidth + cellSize - 1) / cellSize;
+        this.rows = (mapHeight + cellSize - 1) / cellSize;
+        this.wordsPerRow = (columns + 63) >>> 6;
+        this.bits = new long[wordsPerRow * rows];
+
+        for (int handle = 0; handle < objects.size(); handle++) {
+            if (objects.hasFlag(handle, ObjectStore.FLAG_SOLID)) {
+                rasterize(objects.getObject(handle));
+            }
+        }
+    }
+
+    // Mark every cell the object's outline overlaps
+    private void rasterize(TmxParser.MapObject object) {
+        Path2D.Float outline = new Path2D.Float();
+        if (object.polygon != null) {
+            outline.moveTo(object.polygon[0], object.polygon[1]);
+            for (int i = 2; i < object.polygon.length; i += 2) {
+                outline.lineTo(object.polygon[i], object.polygon[i + 1]);
+            }
+            outline.closePath();
+        } else if (object.width > 0 && object.height > 0) {
+            outline.append(new Rectangle2D.Float(0, 0, object.width, object.height), false);
+        } else {
+            return;  // Points and zero-sized objects have no area
+        }
+
+        // Tiled rotates objects clockwise around their (x, y) origin
+        AffineTransform transform = AffineTransform.getTranslateInstance(object.x, object.y);
+        transform.rotate(Math.toRadians(object.rotation));
+        outline.transform(transform);
+
+        Rectangle bounds = outline.getBounds();
+        int firstColumn = Math.max(0, Math.floorDiv(bounds.x, cellSize));
+        int firstRow = Math.max(0, Math.floorDiv(bounds.y, cellSize));
+        int lastColumn = Math.min(columns - 1, Math.floorDiv(bounds.x + bounds.width, cellSize));
+        int lastRow = Math.min(rows - 1, Math.floorDiv(bounds.y + bounds.height, cellSize));
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                if (outline.intersects(column * cellSize, row * cellSize, cellSize, cellSize)) {
+                    bits[row * wordsPerRow + (column >>> 6)] |= 1L << column;
+                }
+            }
+        }
+    }
+
+    // Whether the mask cell at (column, row) is solid
+    public boolean isSolidCell(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return false;
+        }
+        return (bits[row * wordsPerRow + (column >>> 6)] & (1L << column)) != 0;
+    }
+
+    // Whether any cell overlapped by the given box (in pixels) is solid
+    public boolean isSolid(int x, int y, int width, int height) {
+        int lastColumn = Math.floorDiv(x + width - 1, cellSize);
+        int lastRow = Math.floorDiv(y + height - 1, cellSize);
+        for (int row = Math.floorDiv(y, cellSize); row <= lastRow; row++) {
+            if (isSolidSpan(row, Math.floorDiv(x, cellSize), lastColumn)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sweeps a box horizontally and stops it at the first solid cell its leading edge
+     * would enter. Cells the box already overlaps do not block, so a box stuck in a wall
+     * can always move out.
+     *
+     * @return The furthest legal x position.
+     */
+    public int sweepX(int x, int y, int width, int height, int dx) {
+        if (dx == 0) {
+            return x;
+        }
+        int firstRow = Math.floorDiv(y, cellSize);
+        int lastRow = Math.floorDiv(y + height - 1, cellSize);
+
+        if (dx > 0) {
+            int edge = x + width - 1;  // Rightmost pixel column of the box
+            for (int column = Math.floorDiv(edge, cellSize) + 1; column <= Math.floorDiv(edge + dx, cellSize); column++) {
+                if (isSolidColumn(column, firstRow, lastRow)) {
+                    return column * cellSize - width;
+                }
+            }
+        } else {
+            for (int column = Math.floorDiv(x, cellSize) - 1; column >= Math.floorDiv(x + dx, cellSize); column--) {
+                if (isSolidColumn(column, firstRow, lastRow)) {
+                    return (column + 1) * cellSize;
+                }
+            }
+        }
+        return x + dx;
+    }
+
+    /**
+     * Sweeps a box vertically and stops it at the first solid cell its leading edge
+     * would enter.
+     *
+     * @return The furthest legal y position.
+     */
+    public int sweepY(int x, int y, int width, int height, int dy) {
+        if (dy == 0) {
+            return y;
+        }
+        int firstColumn = Math.floorDiv(x, cellSize);
+        int lastColumn = Math.floorDiv(x + width - 1, cellSize);
+
+        if (dy > 0) {
+            int edge = y + height - 1;  // Bottom pixel row of the box
+            for (int row = Math.floorDiv(edge, cellSize) + 1; row <= Math.floorDiv(edge + dy, cellSize); row++) {
+                if (isSolidSpan(row, firstColumn, lastColumn)) {
+                    return row * cellSize - height;
+                }
+            }
+        } else {
+            for (int row = Math.floorDiv(y, cellSize) - 1; row >= Math.floorDiv(y + dy, cellSize); row--) {
+                if (isSolidSpan(row, firstColumn, lastColumn)) {
+                    return (row + 1) * cellSize;
+                }
+            }
+        }
+        return y + dy;
+    }
+
+    private boolean isSolidColumn(int column, int firstRow, int lastRow) {
+        for (int row = firstRow; row <= lastRow; row++) {
+            if (isSolidCell(column, row)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSolidSpan(int row, int firstColumn, int lastColumn) {
+        if (row < 0 || row >= rows) {
+            return false;
+        }
+        for (int column = Math.max(0, firstColumn); column <= Math.min(columns - 1, lastColumn); column++) {
+            if ((bits[row * wordsPerRow + (column >>> 6)] & (1L << column)) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,211 @@
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * The rules of a fight, without any UI: each round the player attacks, defends or runs,
+ * answers a question first, and then the enemy strikes back. FightScreen shows a fight
+ * played by this class, and CombatSimulator plays millions of them headless.
+ *
+ * A round is played in two steps so a view can ask its question however it likes:
+ * nextQuestion() picks the round's question, then play() resolves the round with the
+ * player's answer. fight() does both, asking an AnswerStrategy for the answer. The
+ * results of the last round are kept in the engine (getLastDamageDealt() etc.), so
+ * playing a fight allocates nothing.
+ *
+ * Not thread-safe; use one engine, with its own random generator, per thread.
+ */
+public class CombatEngine {
+    public static final int ENEMY_HEALTH = 100;
+    public static final int ATTACK_DAMAGE = 25;
+    public static final int DEFEND_REDUCTION_PERCENT = 50;  // Announced to the player, but the enemy's attack isn't reduced yet
+    public static final int MIN_ENEMY_DAMAGE = 5;
+    public static final int MAX_ENEMY_DAMAGE = 19;
+    public static final int XP_PER_CORRECT_ANSWER = 10;
+
+    public enum Action {ATTACK, DEFEND, RUN}
+
+    public enum Outcome {IN_PROGRESS, WON, LOST, RAN}
+
+    // Answers the questions of a fight, e.g. a player or a simulated one
+    public interface AnswerStrategy {
+        /**
+         * @param question The question of the round.
+         * @return The answer, or null for no answer.
+         */
+        String answer(Question question);
+    }
+
+    private final List<Question> questions;
+    private final RandomGenerator random;
+    private int questionIndex;
+
+    // State of the current fight
+    private int playerHealth;
+    private int enemyHealth;
+    private Outcome outcome;
+    private int rounds, correctAnswers, wrongAnswers, damageTaken, xpGained;
+
+    // Results of the last round
+    private boolean lastAnswerCorrect;
+    private int lastDamageDealt, lastDamageTaken;
+
+    /**
+     * @param playerHealth The player's health at the start of the fight.
+     * @param questions    The questions asked in turn, one per round; null or empty to ask none.
+     * @param random       Rolls the enemy's damage; seed it to replay a fight.
+     */
+    public CombatEngine(int playerHealth, List<Question> questions, RandomGenerator random) {
+        this.questions = questions;
+        this.random = random;
+        reset(playerHealth);
+    }
+
+    // Start a new fight against a fresh enemy. The questions continue where the last fight stopped.
+    public void reset(int playerHealth) {
+        this.playerHealth = playerHealth;
+        this.enemyHealth = ENEMY_HEALTH;
+        this.outcome = Outcome.IN_PROGRESS;
+        rounds = 0;
+        correctAnswers = 0;
+        wrongAnswers = 0;
+        damageTaken = 0;
+        xpGained = 0;
+        lastAnswerCorrect = false;
+        lastDamageDealt = 0;
+        lastDamageTaken = 0;
+    }
+
+    /**
+     * Picks the question of the next round.
+     *
+     * @return The question, or null if there are no questions.
+     */
+    public Question nextQuestion() {
+        if (questions == null || questions.isEmpty()) {
+            return null;
+        }
+        Question question = questions.get(questionIndex);
+        questionIndex = (questionIndex + 1) % questions.size();
+        return question;
+    }
+
+    /**
+     * Plays a round. A correct answer earns XP; the attack lands and the enemy strikes back
+     * either way, unless the attack defeats it.
+     *
+     * @param action   What the player does.
+     * @param question The question from nextQuestion(), or null if none was asked.
+     * @param answer   The player's answer, or null.
+     * @return The outcome of the fight after the round.
+     */
+    public Outcome play(Action action, Question question, String answer) {
+        if (outcome != Outcome.IN_PROGRESS) {
+            throw new IllegalStateException("The fight is already over: " + outcome);
+        }
+        lastAnswerCorrect = false;
+        lastDamageDealt = 0;
+        lastDamageTaken = 0;
+
+        if (action == Action.RUN) {
+            outcome = Outcome.RAN;
+            return outcome;
+        }
+
+        rounds++;
+        if (question != null) {
+            lastAnswerCorrect = answer != null && answer.equalsIgnoreCase(question.getAnswer());
+            if (lastAnswerCorrect) {
+                correctAnswers++;
+                xpGained += XP_PER_CORRECT_ANSWER;
+            } else {
+                wrongAnswers++;
+            }
+        }
+
+        if (action == Action.ATTACK) {
+            lastDamageDealt = Math.min(ATTACK_DAMAGE, enemyHealth);
+            enemyHealth -= lastDamageDealt;
+            if (enemyHealth <= 0) {
+                outcome = Outcome.WON;
+                return outcome;
+            }
+        }
+        enemyAttack();
+        return outcome;
+    }
+
+    /**
+     * Plays a round, asking the strategy to answer the round's question.
+     *
+     * @return The outcome of the fight after the round.
+     */
+    public Outcome fight(Action action, AnswerStrategy answers) {
+        if (action == Action.RUN) {
+            return play(action, null, null);
+        }
+        Question question = nextQuestion();
+        return play(action, question, question != null ? answers.answer(question) : null);
+    }
+
+    private void enemyAttack() {
+        int damage = MIN_ENEMY_DAMAGE + random.nextInt(MAX_ENEMY_DAMAGE - MIN_ENEMY_DAMAGE + 1);
+        lastDamageTaken = damage;
+        damageTaken += damage;
+        playerHealth = Math.max(playerHealth - damage, 0);
+        if (playerHealth <= 0) {
+            outcome = Outcome.LOST;
+        }
+    }
+
+    public boolean isOver() {
+        return outcome != Outcome.IN_PROGRESS;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    public int getPlayerHealth() {
+        return playerHealth;
+    }
+
+    public int getEnemyHealth() {
+        return enemyHealth;
+    }
+
+    // Rounds played, not counting running away
+    public int getRounds() {
+        return rounds;
+    }
+
+    public int getCorrectAnswers() {
+        return correctAnswers;
+    }
+
+    public int getWrongAnswers() {
+        return wrongAnswers;
+    }
+
+    // Total damage the enemy dealt, including any beyond the player's remaining health
+    public int getDamageTaken() {
+        return damageTaken;
+    }
+
+    public int getXpGained() {
+        return xpGained;
+    }
+
+    public boolean wasLastAnswerCorrect() {
+        return lastAnswerCorrect;
+    }
+
+    // Damage the player dealt in the last round, 0 when defending
+    public int getLastDamageDealt() {
+        return lastDamageDealt;
+    }
+
+    // Damage the enemy dealt in the last round, 0 if it was defeated first
+    public int getLastDamageTaken() {
+        return lastDamageTaken;
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many fights with CombatEngine on all cores and prints the win rate and the
+ * distributions of damage taken and rounds per fight, e.g. to balance the combat rules.
+ * The simulated player defends with probability defendRate and attacks otherwise, and
+ * answers each question correctly with probability correctRate.
+ *
+ * Fights are played in blocks, each with its own random generator split from the seed,
+ * so a seed gives the same results on any number of threads.
+ *
+ * Usage: java CombatSimulator [fights] [correctRate] [defendRate] [playerHealth] [seed] [threads]
+ */
+public class CombatSimulator {
+    private static final int BLOCK_SIZE = 10_000;  // Fights per task
+    private static final int QUESTIONS = 10;
+    private static final int DAMAGE_BIN = 10;  // Width of the printed damage histogram's bins
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        long fights = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        double correctRate = args.length > 1 ? Double.parseDouble(args[1]) : 0.75;
+        double defendRate = args.length > 2 ? Double.parseDouble(args[2]) : 0.0;
+        int playerHealth = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+        int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+        List<Question> questions = new ArrayList<>();
+        for (int i = 0; i < QUESTIONS; i++) {
+            questions.add(new Question("Question " + i, "answer " + i));
+        }
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Stats total = new Stats(playerHealth);
+        try {
+            SplittableRandom seeds = new SplittableRandom(seed);
+            List<Future<Stats>> blocks = new ArrayList<>();
+            for (long first = 0; first < fights; first += BLOCK_SIZE) {
+                int count = (int) Math.min(BLOCK_SIZE, fights - first);
+                SplittableRandom random = seeds.split();  // Split in order, so blocks don't depend on scheduling
+                blocks.add(pool.submit(() -> playBlock(count, playerHealth, questions, correctRate, defendRate, random)));
+            }
+            for (Future<Stats> block : blocks) {
+                total.add(block.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d fights on %d threads in %.2f s (%.0f fights/s)%n", total.fights, threads, seconds, total.fights / seconds);
+        System.out.printf("player health %d, correct answers %.0f%%, defending %.0f%%, seed %d%n%n",
+                playerHealth, 100 * correctRate, 100 * defendRate, seed);
+        System.out.printf("won  %6.2f%%%n", 100.0 * total.won / total.fights);
+        System.out.printf("lost %6.2f%%%n", 100.0 * total.lost / total.fights);
+        System.out.printf("xp   %6.2f per fight%n%n", (double) total.xp / total.fights);
+
+        System.out.printf("%-14s %8s %6s %6s %6s %6s%n", "", "mean", "p50", "p90", "p99", "max");
+        printDistribution("damage taken", total.damage, total.fights);
+        printDistribution("rounds", total.rounds, total.fights);
+
+        System.out.printf("%ndamage taken%n");
+        for (int low = 0; low < total.damage.length; low += DAMAGE_BIN) {
+            long count = 0;
+            for (int damage = low; damage < Math.min(low + DAMAGE_BIN, total.damage.length); damage++) {
+                count += total.damage[damage];
+            }
+            if (count > 0) {
+                double percent = 100.0 * count / total.fights;
+                System.out.printf("%4d-%-4d %6.2f%% %s%n", low, low + DAMAGE_BIN - 1, percent, "#".repeat((int) Math.round(percent / 2)));
+            }
+        }
+    }
+
+    // Play one block of fights with its own engine and random generator
+    private static Stats playBlock(int count, int playerHealth, List<Question> questions, double correctRate, double defendRate, SplittableRandom random) {
+        Stats stats = new Stats(playerHealth);
+        CombatEngine engine = new CombatEngine(playerHealth, questions, random);
+        CombatEngine.AnswerStrategy answers = question -> random.nextDouble() < correctRate ? question.getAnswer() : "";
+        for (int i = 0; i < count; i++) {
+            engine.reset(playerHealth);
+            while (!engine.isOver()) {
+                engine.fight(random.nextDouble() < defendRate ? CombatEngine.Action.DEFEND : CombatEngine.Action.ATTACK, answers);
+            }
+            stats.record(engine);
+        }
+        return stats;
+    }
+
+    private static void printDistribution(String name, long[] histogram, long fights) {
+        long sum = 0;
+        int max = 0;
+        for (int value = 0; value < histogram.length; value++) {
+            sum += value * histogram[value];
+            if (histogram[value] > 0) {
+                max = value;
+            }
+        }
+        System.out.printf("%-14s %8.2f %6d %6d %6d %6d%n", name, (double) sum / fights,
+                percentile(histogram, fights, 0.50), percentile(histogram, fights, 0.90), percentile(histogram, fights, 0.99), max);
+    }
+
+    // Smallest value that the given fraction of the fights is at or below
+    private static int percentile(long[] histogram, long fights, double fraction) {
+        long target = (long) Math.ceil(fights * fraction);
+        long seen = 0;
+        for (int value = 0; value < histogram.length; value++) {
+            seen += histogram[value];
+            if (seen >= target && seen > 0) {
+                return value;
+            }
+        }
+        return 0;
+    }
+
+    // Outcome counts and histograms of a number of fights
+    private static class Stats {
+        long fights, won, lost, xp;
+        final long[] damage;  // Fights by damage taken
+        final long[] rounds;  // Fights by rounds played
+
+        Stats(int playerHealth) {
+            // A fight ends at the latest with the hit that takes the player's last health point
+            damage = new long[playerHealth + CombatEngine.MAX_ENEMY_DAMAGE];
+            rounds = new long[(playerHealth + CombatEngine.MIN_ENEMY_DAMAGE - 1) / CombatEngine.MIN_ENEMY_DAMAGE
+                    + (CombatEngine.ENEMY_HEALTH + CombatEngine.ATTACK_DAMAGE - 1) / CombatEngine.ATTACK_DAMAGE + 1];
+        }
+
+        void record(CombatEngine engine) {
+            fights++;
+            if (engine.getOutcome() == CombatEngine.Outcome.WON) {
+                won++;
+            } else {
+                lost++;
+            }
+            xp += engine.getXpGained();
+            damage[engine.getDamageTaken()]++;
+            rounds[engine.getRounds()]++;
+        }
+
+        void add(Stats other) {
+            fights += other.fights;
+            won += other.won;
+            lost += other.lost;
+            xp += other.xp;
+            for (int i = 0; i < damage.length; i++) {
+                damage[i] += other.damage[i];
+            }
+            for (int i = 0; i < rounds.length; i++) {
+                rounds[i] += other.rounds[i];
+            }
+        }
+    }
+}
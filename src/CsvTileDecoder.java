@@ -0,0 +1,58 @@
+/**
+ * Decodes Tiled's CSV layer data into a row-major GID array. Text can be fed in any
+ * number of pieces (e.g. as an XML parser delivers it), so no string holding the whole
+ * layer is ever built and no per-cell objects are allocated.
+ */
+public class CsvTileDecoder implements TileDataDecoder {
+    private final int[] tiles;
+    private int index;
+    private long value;
+    private boolean inNumber;
+
+    /**
+     * @param tileCount The number of tiles in the layer (width * height).
+     */
+    public CsvTileDecoder(int tileCount) {
+        this.tiles = new int[tileCount];
+    }
+
+    /**
+     * Decodes the next piece of CSV text. Whitespace and line breaks are ignored, and a
+     * number may be split across two pieces.
+     */
+    @Override
+    public void feed(char[] text, int start, int length) {
+        for (int i = start, end = start + length; i < end; i++) {
+            char c = text[i];
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                inNumber = true;
+            } else if (c == ',') {
+                store();
+            }
+        }
+    }
+
+    /**
+     * @return The decoded tiles; missing trailing tiles are left empty.
+     */
+    @Override
+    public int[] finish() {
+        if (inNumber) {
+            store();
+        }
+        if (index != tiles.length) {
+            System.err.println("Layer data has " + index + " tiles, expected " + tiles.length);
+        }
+        return tiles;
+    }
+
+    private void store() {
+        if (index < tiles.length) {
+            tiles[index] = (int) value;  // GIDs are unsigned 32-bit, flip flags end up in the sign bit
+        }
+        index++;
+        value = 0;
+        inNumber = false;
+    }
+}
@@ -0,0 +1,69 @@
+import java.awt.Rectangle;
+
+/**
+ * Collects the parts of the screen that changed since they were last drawn, so the game
+ * can repaint just those, or skip drawing altogether while nothing moves. Regions are kept
+ * as one bounding rectangle in screen pixels; map regions are converted with the camera.
+ *
+ * Not thread-safe: add damage and read it under the game lock, or on a single thread.
+ */
+public class DamageTracker {
+    private final Camera camera;
+    private final Rectangle bounds = new Rectangle();
+    private boolean empty = true;
+    private boolean full;
+
+    /**
+     * @param camera Converts map pixels to screen pixels.
+     */
+    public DamageTracker(Camera camera) {
+        this.camera = camera;
+    }
+
+    // The whole screen changed, e.g. because the camera moved
+    public void addAll() {
+        full = true;
+        empty = false;
+    }
+
+    // A rectangle of the screen changed, in screen pixels
+    public void add(int x, int y, int width, int height) {
+        if (full || width <= 0 || height <= 0) {
+            return;
+        }
+        if (empty) {
+            bounds.setBounds(x, y, width, height);
+            empty = false;
+        } else {
+            bounds.add(new Rectangle(x, y, width, height));
+        }
+    }
+
+    // A rectangle of the map changed, in map pixels, as seen through the camera
+    public void addMapRegion(float x, float y, float width, float height) {
+        if (full) {
+            return;
+        }
+        Rectangle screen = camera.toScreen(x, y, width, height);
+        add(screen.x, screen.y, screen.width, screen.height);
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    // Bounds of the changed regions; only meaningful if neither empty nor full
+    public Rectangle getBounds() {
+        return new Rectangle(bounds);
+    }
+
+    // Everything was drawn
+    public void clear() {
+        empty = true;
+        full = false;
+    }
+}
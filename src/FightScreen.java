@@ -1,42 +1,42 @@
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
-import java.awt.event.ActionEvent;
 import java.awt.image.BufferedImage;
 import java.util.List;
 import java.util.Random;
 
+// Shows a fight played by CombatEngine: asks the questions and reports each round to the player
 public class FightScreen extends JDialog {
     private Character character;
     private TmxParser.MapObject enemy;
     private JLabel playerHealthLabel;
     private JLabel enemyHealthLabel;
-    private int playerHealth;
-    private int enemyHealth = 100;
-    private Random random = new Random();
+    private CombatEngine engine;
     private Timer animationTimer;
     private TmxParser.Animation enemyAnimation;
     private int currentFrame = 0;
-    private boolean fightWon = false;
     private TmxParser parser;
-    private List<Question> questions;
-    private int currentQuestionIndex = 0;
+
+    // Recorded as a game.Fight event when the fight screen closes
+    private GameEvents.Fight fightEvent = new GameEvents.Fight();
 
     public FightScreen(JFrame parent, Character character, TmxParser.MapObject enemy, TmxParser parser, List<Question> questions) {
         super(parent, "Fight Screen", true);
+        fightEvent.begin();
+        long setupStart = System.nanoTime();
         this.character = character;
         this.enemy = enemy;
         this.parser = parser;
-        this.playerHealth = character.getHealth();
-        this.questions = questions;
+        this.engine = new CombatEngine(character.getHealth(), questions, new Random());
         this.enemyAnimation = loadEnemyAnimation();
 
         setupUI(parent);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);  // Closing the window ends the fight like running away
         startAnimationTimer();
+        fightEvent.setupTime = System.nanoTime() - setupStart;
     }
 
     private TmxParser.Animation loadEnemyAnimation() {
-        TmxParser.Animation animation = parser.getAnimations().get(enemy.gid);
+        TmxParser.Animation animation = parser.getGidTable().getAnimation(enemy.gid);
         if (animation == null) {
             throw new IllegalStateException("No animation found for enemy GID: " + enemy.gid);
         }
@@ -67,9 +67,10 @@ public class FightScreen extends JDialog {
         JLabel playerLabel = new JLabel("Player", SwingConstants.CENTER);
         playerLabel.setFont(new Font("Arial", Font.BOLD, 18));
 
-        playerHealthLabel = new JLabel("Health: " + playerHealth, SwingConstants.CENTER);
+        playerHealthLabel = new JLabel("Health: " + engine.getPlayerHealth(), SwingConstants.CENTER);
         playerPanel.add(playerLabel, BorderLayout.NORTH);
-        playerPanel.add(new JLabel(new ImageIcon("resources/assets/rabbit.png")), BorderLayout.CENTER);
+        BufferedImage playerSprite = ImageUtils.loadImage("resources/assets/rabbit.png");  // Cached, not read again every fight
+        playerPanel.add(playerSprite != null ? new JLabel(new ImageIcon(playerSprite)) : new JLabel(), BorderLayout.CENTER);
         playerPanel.add(playerHealthLabel, BorderLayout.SOUTH);
         return playerPanel;
     }
@@ -85,7 +86,7 @@ public class FightScreen extends JDialog {
 
         JLabel enemyLabel = new JLabel(enemy.name, SwingConstants.CENTER);
         enemyLabel.setFont(new Font("Arial", Font.BOLD, 18));
-        enemyHealthLabel = new JLabel("Health: " + enemyHealth, SwingConstants.CENTER);
+        enemyHealthLabel = new JLabel("Health: " + engine.getEnemyHealth(), SwingConstants.CENTER);
 
         enemyPanel.add(enemyLabel, BorderLayout.NORTH);
         enemyPanel.add(enemyHealthLabel, BorderLayout.SOUTH);
@@ -109,8 +110,11 @@ public class FightScreen extends JDialog {
     private JButton createRunButton() {
         JButton runButton = new JButton("Run");
         runButton.addActionListener(e -> {
+            if (engine.isOver()) {
+                return;
+            }
+            engine.play(CombatEngine.Action.RUN, null, null);
             JOptionPane.showMessageDialog(this, "You chose to run! You lost the fight.");
-            fightWon = false;
             dispose();
         });
         return runButton;
@@ -118,33 +122,13 @@ public class FightScreen extends JDialog {
 
     private JButton createAttackButton() {
         JButton attackButton = new JButton("Attack");
-        attackButton.addActionListener(e -> {
-            stopAnimation();
-            askQuestion(() -> {
-                attackEnemy(25);  // More damage for correct answer
-                if (enemyHealth <= 0) {
-                    JOptionPane.showMessageDialog(this, "You won the fight!");
-                    fightWon = true;
-                    dispose();
-                } else {
-                    enemyAttack();
-                }
-                startAnimation();
-            });
-        });
+        attackButton.addActionListener(e -> playRound(CombatEngine.Action.ATTACK));
         return attackButton;
     }
 
     private JButton createDefendButton() {
         JButton defendButton = new JButton("Defend");
-        defendButton.addActionListener(e -> {
-            stopAnimation();
-            askQuestion(() -> {
-                defendAgainstEnemy(50);  // More defense for correct answer
-                enemyAttack();
-                startAnimation();
-            });
-        });
+        defendButton.addActionListener(e -> playRound(CombatEngine.Action.DEFEND));
         return defendButton;
     }
 
@@ -177,66 +161,98 @@ public class FightScreen extends JDialog {
     }
 
     private BufferedImage getEnemyFrameImage(TmxParser.Frame frame) {
-        return ImageUtils.getTileImage(parser, frame.tileId + enemy.gid);
-    }
-
-    private void attackEnemy(int damage) {
-        enemyHealth -= damage;
-        enemyHealth = Math.max(enemyHealth, 0);
-        enemyHealthLabel.setText("Health: " + enemyHealth);
-        JOptionPane.showMessageDialog(this, "You attacked the enemy and dealt " + damage + " damage!");
+        return parser.getGidTable().getFrameImage(enemy.gid, frame.tileId);
     }
 
-    private void defendAgainstEnemy(int damageReduction) {
-        JOptionPane.showMessageDialog(this, "You chose to defend! Enemy's attack will be reduced by " + damageReduction + "%.");
+    // Ask the round's question, then let the engine resolve the round
+    private void playRound(CombatEngine.Action action) {
+        if (engine.isOver()) {
+            return;
+        }
+        stopAnimation();
+        Question question = engine.nextQuestion();
+        if (question == null) {
+            System.out.println("No questions available.");
+            showRound(action, null, null);  // Proceed if no questions
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            String userAnswer = JOptionPane.showInputDialog(this, question.getQuestion(), "Answer the Question", JOptionPane.QUESTION_MESSAGE);
+            showRound(action, question, userAnswer);  // Proceed after question is answered
+        });
     }
 
-    private void enemyAttack() {
-        if (enemyHealth > 0) {
-            int baseDamage = random.nextInt(15) + 5;
-            int damage = baseDamage;
-            character.removeHealth(damage);
-            playerHealth -= damage;
-            playerHealth = Math.max(playerHealth, 0);
-            playerHealthLabel.setText("Health: " + playerHealth);
-            JOptionPane.showMessageDialog(this, "The enemy attacked you and dealt " + damage + " damage!");
-
-            if (playerHealth <= 0) {
-                JOptionPane.showMessageDialog(this, "You lost the fight!");
-                fightWon = false;
-                dispose();
+    // Play the round and tell the player what happened, in the order it happened
+    private void showRound(CombatEngine.Action action, Question question, String answer) {
+        if (engine.isOver()) {
+            return;
+        }
+        engine.play(action, question, answer);
+
+        if (question != null) {
+            if (engine.wasLastAnswerCorrect()) {
+                JOptionPane.showMessageDialog(this, "Correct Answer!", "Result", JOptionPane.INFORMATION_MESSAGE);
+                character.addXP(CombatEngine.XP_PER_CORRECT_ANSWER);
+            } else {
+                JOptionPane.showMessageDialog(this, "Wrong Answer!", "Result", JOptionPane.ERROR_MESSAGE);
             }
         }
-    }
 
-    private void askQuestion(Runnable onComplete) {
-        if (questions != null && !questions.isEmpty()) {
-            Question question = questions.get(currentQuestionIndex);
-            currentQuestionIndex = (currentQuestionIndex + 1) % questions.size();
-
-            SwingUtilities.invokeLater(() -> {
-                String userAnswer = JOptionPane.showInputDialog(this, question.getQuestion(), "Answer the Question", JOptionPane.QUESTION_MESSAGE);
-                if (userAnswer != null && userAnswer.equalsIgnoreCase(question.getAnswer())) {
-                    JOptionPane.showMessageDialog(this, "Correct Answer!", "Result", JOptionPane.INFORMATION_MESSAGE);
-                    character.addXP(10);
-                } else {
-                    JOptionPane.showMessageDialog(this, "Wrong Answer!", "Result", JOptionPane.ERROR_MESSAGE);
-                }
-                onComplete.run();  // Proceed after question is answered
-            });
+        if (action == CombatEngine.Action.ATTACK) {
+            enemyHealthLabel.setText("Health: " + engine.getEnemyHealth());
+            JOptionPane.showMessageDialog(this, "You attacked the enemy and dealt " + engine.getLastDamageDealt() + " damage!");
         } else {
-            System.out.println("No questions available.");
-            onComplete.run();  // Proceed if no questions
+            JOptionPane.showMessageDialog(this, "You chose to defend! Enemy's attack will be reduced by " + CombatEngine.DEFEND_REDUCTION_PERCENT + "%.");
+        }
+
+        if (engine.getOutcome() == CombatEngine.Outcome.WON) {
+            JOptionPane.showMessageDialog(this, "You won the fight!");
+            dispose();
+            return;
+        }
+
+        // The enemy strikes back
+        character.removeHealth(engine.getLastDamageTaken());
+        playerHealthLabel.setText("Health: " + engine.getPlayerHealth());
+        JOptionPane.showMessageDialog(this, "The enemy attacked you and dealt " + engine.getLastDamageTaken() + " damage!");
+        if (engine.getOutcome() == CombatEngine.Outcome.LOST) {
+            JOptionPane.showMessageDialog(this, "You lost the fight!");
+            dispose();
+            return;
         }
+        startAnimation();
     }
 
     @Override
     public void dispose() {
         animationTimer.stop();
+        commitFightEvent();
         super.dispose();
     }
 
+    // Record the fight once, however the screen was closed
+    private void commitFightEvent() {
+        if (fightEvent == null) {
+            return;
+        }
+        fightEvent.end();
+        if (fightEvent.shouldCommit()) {
+            fightEvent.map = parser.getPath();
+            fightEvent.enemy = enemy.name;
+            fightEvent.enemyId = enemy.id;
+            fightEvent.enemyGid = enemy.gid;
+            fightEvent.rounds = engine.getRounds();
+            fightEvent.correctAnswers = engine.getCorrectAnswers();
+            fightEvent.wrongAnswers = engine.getWrongAnswers();
+            fightEvent.damageTaken = engine.getDamageTaken();
+            fightEvent.playerHealth = engine.getPlayerHealth();
+            fightEvent.outcome = engine.isOver() ? engine.getOutcome().name().toLowerCase() : "closed";
+            fightEvent.commit();
+        }
+        fightEvent = null;
+    }
+
     public boolean isFightWon() {
-        return fightWon;
+        return engine.getOutcome() == CombatEngine.Outcome.WON;
     }
 }
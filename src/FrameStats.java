@@ -0,0 +1,224 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Times the phases of each frame and draws them as an overlay (toggled with F3): frames
+ * per second, frame time percentiles, the average time of each phase and cache hit rates.
+ *
+ * Frame times go into a histogram of fixed buckets, so recording allocates nothing. Every
+ * second the histogram is summarized into the overlay's text and cleared. While disabled,
+ * start() and stop() only read a flag, so the timers can stay in the hot paths.
+ *
+ * Not thread-safe: record frames and phases from the thread that renders, or under the
+ * lock that guards the game state.
+ */
+public class FrameStats {
+    // Phases of a frame
+    public static final int TILE_LAYERS = 0;
+    public static final int OBJECT_LAYERS = 1;
+    public static final int CHARACTER = 2;
+    public static final int HUD = 3;
+    public static final int COLLISION = 4;  // Movement and pickup/enemy checks, without the fights they start
+    private static final String[] PHASE_NAMES = {"Tiles", "Objects", "Character", "HUD", "Collision"};
+
+    // For code that isn't being measured; never enabled
+    public static final FrameStats NONE = new FrameStats();
+
+    // Histogram buckets: 10 us wide up to 20 ms, then 1 ms wide up to 1 s; slower frames share the last bucket
+    private static final int FINE_STEP_MICROS = 10;
+    private static final int FINE_LIMIT_MICROS = 20_000;
+    private static final int COARSE_STEP_MICROS = 1_000;
+    private static final int FINE_BUCKETS = FINE_LIMIT_MICROS / FINE_STEP_MICROS;
+    private static final int BUCKETS = FINE_BUCKETS + (1_000_000 - FINE_LIMIT_MICROS) / COARSE_STEP_MICROS + 1;
+
+    private static final long WINDOW_NANOS = 1_000_000_000L;  // How often the overlay text is updated
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+
+    private volatile boolean enabled;
+
+    // Current window
+    private final int[] frameTimes = new int[BUCKETS];
+    private final long[] phaseNanos = new long[PHASE_NAMES.length];
+    private long maxFrameNanos;
+    private int frames;
+    private long windowStart;
+    private long frameStart;
+
+    // Cache hit rates, sampled once per window
+    private final List<String> cacheNames = new ArrayList<>();
+    private final List<LongSupplier> cacheHits = new ArrayList<>();
+    private final List<LongSupplier> cacheMisses = new ArrayList<>();
+    private long[] lastHits = new long[0], lastMisses = new long[0];
+
+    private String[] lines = {"Collecting..."};  // Overlay text of the last complete window
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Show or hide the overlay; measuring starts over when it is shown
+    public void toggle() {
+        if (this == NONE) {
+            return;
+        }
+        if (!enabled) {
+            clearWindow(System.nanoTime());
+            for (int i = 0; i < cacheNames.size(); i++) {
+                lastHits[i] = cacheHits.get(i).getAsLong();
+                lastMisses[i] = cacheMisses.get(i).getAsLong();
+            }
+            lines = new String[]{"Collecting..."};
+        }
+        enabled = !enabled;
+    }
+
+    /**
+     * Adds a cache to the overlay. Its counters are read once per second.
+     *
+     * @param name   The name shown in the overlay.
+     * @param hits   The total number of hits so far.
+     * @param misses The total number of misses so far.
+     */
+    public void addCache(String name, LongSupplier hits, LongSupplier misses) {
+        cacheNames.add(name);
+        cacheHits.add(hits);
+        cacheMisses.add(misses);
+        lastHits = Arrays.copyOf(lastHits, cacheNames.size());
+        lastMisses = Arrays.copyOf(lastMisses, cacheNames.size());
+        lastHits[lastHits.length - 1] = hits.getAsLong();
+        lastMisses[lastMisses.length - 1] = misses.getAsLong();
+    }
+
+    /**
+     * Starts timing a phase.
+     *
+     * @return The start time to pass to stop(), 0 while disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since start to a phase of the current frame.
+     *
+     * @param phase The phase, e.g. TILE_LAYERS.
+     * @param start The value returned by start() or by the previous stop().
+     * @return The current time, to time the next phase from, or 0 while disabled.
+     */
+    public long stop(int phase, long start) {
+        if (!enabled || start == 0) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        phaseNanos[phase] += now - start;
+        return now;
+    }
+
+    public void beginFrame() {
+        if (enabled) {
+            frameStart = System.nanoTime();
+        }
+    }
+
+    public void endFrame() {
+        if (!enabled || frameStart == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long frameNanos = now - frameStart;
+        frameTimes[bucket(frameNanos / 1000)]++;
+        maxFrameNanos = Math.max(maxFrameNanos, frameNanos);
+        frames++;
+
+        if (now - windowStart >= WINDOW_NANOS) {
+            summarize(now);
+            clearWindow(now);
+        }
+    }
+
+    // Draws the overlay in the top right corner of the screen, if it is enabled
+    public void draw(Graphics g, int screenWidth) {
+        if (!enabled) {
+            return;
+        }
+        String[] text = lines;
+        g.setFont(FONT);
+        FontMetrics metrics = g.getFontMetrics();
+        int width = 0;
+        for (String line : text) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        int lineHeight = metrics.getHeight();
+        int x = screenWidth - width - 15;
+
+        g.setColor(BACKGROUND);
+        g.fillRect(x - 5, 5, width + 10, text.length * lineHeight + 10);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < text.length; i++) {
+            g.drawString(text[i], x, 10 + metrics.getAscent() + i * lineHeight);
+        }
+    }
+
+    // Turn the current window into overlay text
+    private void summarize(long now) {
+        List<String> text = new ArrayList<>();
+        double seconds = (now - windowStart) / 1e9;
+        text.add(String.format("FPS %6.1f", frames / seconds));
+        text.add(String.format("Frame p50 %5.2f  p99 %5.2f  max %5.2f ms",
+                percentileMicros(0.50) / 1000.0, percentileMicros(0.99) / 1000.0, maxFrameNanos / 1e6));
+        for (int phase = 0; phase < PHASE_NAMES.length; phase++) {
+            text.add(String.format("%-10s %7.3f ms/frame", PHASE_NAMES[phase], phaseNanos[phase] / 1e6 / Math.max(1, frames)));
+        }
+        for (int i = 0; i < cacheNames.size(); i++) {
+            long hits = cacheHits.get(i).getAsLong();
+            long misses = cacheMisses.get(i).getAsLong();
+            long lookups = hits - lastHits[i] + misses - lastMisses[i];
+            text.add(lookups > 0
+                    ? String.format("%-10s %5.1f%% hits", cacheNames.get(i), 100.0 * (hits - lastHits[i]) / lookups)
+                    : String.format("%-10s     - hits", cacheNames.get(i)));
+            lastHits[i] = hits;
+            lastMisses[i] = misses;
+        }
+        lines = text.toArray(new String[0]);
+    }
+
+    private void clearWindow(long now) {
+        Arrays.fill(frameTimes, 0);
+        Arrays.fill(phaseNanos, 0);
+        maxFrameNanos = 0;
+        frames = 0;
+        windowStart = now;
+        frameStart = 0;
+    }
+
+    // Upper bound of the bucket holding the given fraction of this window's frames
+    private long percentileMicros(double fraction) {
+        long target = (long) Math.ceil(frames * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += frameTimes[i];
+            if (seen >= target && seen > 0) {
+                return bucketLimitMicros(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int bucket(long micros) {
+        if (micros < FINE_LIMIT_MICROS) {
+            return (int) (micros / FINE_STEP_MICROS);
+        }
+        return (int) Math.min(BUCKETS - 1, FINE_BUCKETS + (micros - FINE_LIMIT_MICROS) / COARSE_STEP_MICROS);
+    }
+
+    private static long bucketLimitMicros(int bucket) {
+        if (bucket < FINE_BUCKETS) {
+            return (bucket + 1L) * FINE_STEP_MICROS;
+        }
+        return FINE_LIMIT_MICROS + (bucket - FINE_BUCKETS + 1L) * COARSE_STEP_MICROS;
+    }
+}
@@ -0,0 +1,239 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events for the game's own work: loading maps and tilesets, rendering
+ * frames and layers, collision checks and fights. They show up under "Game" in JDK Mission
+ * Control, or with e.g.
+ *
+ *   java -XX:StartFlightRecording=filename=game.jfr ...
+ *   jfr print --events 'game.*' game.jfr
+ *
+ * The thresholds keep the per-frame events down to the slow ones; lower them in a custom
+ * .jfc settings file to record every frame.
+ *
+ * While no recording is running, begin(), end() and commit() do nothing, so the events stay
+ * in the hot paths. Call end() first, then set the fields only if shouldCommit() returns
+ * true; it only knows the duration to compare with the threshold after end().
+ */
+public final class GameEvents {
+    private static final String CATEGORY = "Game";
+
+    private GameEvents() {
+    }
+
+    @Name("game.MapLoad")
+    @Label("Map Load")
+    @Category({CATEGORY, "Loading"})
+    @Description("Loading a map with all of its tilesets, from the call to the finished map")
+    @StackTrace(false)
+    public static class MapLoad extends Event {
+        @Label("Map")
+        public String map;
+
+        @Label("Source")
+        @Description("xml, dom or compiled")
+        public String source;
+
+        @Label("Width")
+        @Description("In tiles")
+        public int width;
+
+        @Label("Height")
+        @Description("In tiles")
+        public int height;
+
+        @Label("Tilesets")
+        public int tilesets;
+
+        @Label("Layers")
+        public int layers;
+
+        @Label("Objects")
+        public int objects;
+
+        @Label("Errors")
+        @Description("Assets that failed to load")
+        public int errors;
+    }
+
+    @Name("game.MapLoadPhase")
+    @Label("Map Load Phase")
+    @Category({CATEGORY, "Loading"})
+    @Description("One phase of a map load, e.g. reading the map or waiting for its tilesets")
+    @StackTrace(false)
+    public static class MapLoadPhase extends Event {
+        @Label("Map")
+        public String map;
+
+        @Label("Phase")
+        public String phase;
+    }
+
+    @Name("game.TilesetLoad")
+    @Label("Tileset Load")
+    @Category({CATEGORY, "Loading"})
+    @Description("Reading a .tsx file or decoding a tileset image on an asset loader thread")
+    @StackTrace(false)
+    public static class TilesetLoad extends Event {
+        @Label("Map")
+        public String map;
+
+        @Label("Path")
+        public String path;
+
+        @Label("Kind")
+        @Description("tileset or image")
+        public String kind;
+
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    @Name("game.RenderFrame")
+    @Label("Render Frame")
+    @Category({CATEGORY, "Rendering"})
+    @Description("Drawing the map's tile and object layers for one frame")
+    @Threshold("10 ms")
+    @StackTrace(false)
+    public static class RenderFrame extends Event {
+        @Label("Map")
+        public String map;
+
+        @Label("View X")
+        public int viewX;
+
+        @Label("View Y")
+        public int viewY;
+
+        @Label("View Width")
+        public int viewWidth;
+
+        @Label("View Height")
+        public int viewHeight;
+
+        @Label("Tiles Drawn")
+        @Description("Cells in the visible range of all layers, drawn directly or as part of cached chunks")
+        public long tilesDrawn;
+
+        @Label("Tiles Culled")
+        @Description("Cells of all layers outside the visible range")
+        public long tilesCulled;
+
+        @Label("Animated Tiles")
+        public int animatedTiles;
+
+        @Label("Chunks Rasterized")
+        @Description("Chunk cache misses, each one drawn tile by tile")
+        public long chunksRasterized;
+
+        @Label("Objects Drawn")
+        public int objectsDrawn;
+
+        @Label("Objects Culled")
+        @Description("Objects near the view that were hidden or outside it")
+        public int objectsCulled;
+    }
+
+    @Name("game.RenderLayer")
+    @Label("Render Layer")
+    @Category({CATEGORY, "Rendering"})
+    @Description("Drawing one tile layer of a frame")
+    @Threshold("5 ms")
+    @StackTrace(false)
+    public static class RenderLayer extends Event {
+        @Label("Map")
+        public String map;
+
+        @Label("Layer")
+        public String layer;
+
+        @Label("Layer Index")
+        public int layerIndex;
+
+        @Label("Tiles Drawn")
+        public long tilesDrawn;
+
+        @Label("Tiles Culled")
+        public long tilesCulled;
+
+        @Label("Animated Tiles")
+        public int animatedTiles;
+
+        @Label("Chunks Rasterized")
+        public long chunksRasterized;
+    }
+
+    @Name("game.CollisionCheck")
+    @Label("Collision Check")
+    @Category({CATEGORY, "Collision"})
+    @Description("Finding the pickups and enemies the character touches, without the fights that follow")
+    @Threshold("1 ms")
+    public static class CollisionCheck extends Event {
+        @Label("Map")
+        public String map;
+
+        @Label("X")
+        public int x;
+
+        @Label("Y")
+        public int y;
+
+        @Label("Objects Tested")
+        @Description("Objects in the spatial hash cells the character overlaps")
+        public int objectsTested;
+
+        @Label("Hits")
+        public int hits;
+    }
+
+    @Name("game.Fight")
+    @Label("Fight")
+    @Category({CATEGORY, "Combat"})
+    @Description("A fight from opening the fight screen until it closes")
+    @StackTrace(false)
+    public static class Fight extends Event {
+        @Label("Map")
+        public String map;
+
+        @Label("Enemy")
+        public String enemy;
+
+        @Label("Enemy Id")
+        public int enemyId;
+
+        @Label("Enemy GID")
+        public int enemyGid;
+
+        @Label("Setup Time")
+        @Description("Opening the fight screen, before the first frame of the fight")
+        @Timespan(Timespan.NANOSECONDS)
+        public long setupTime;
+
+        @Label("Rounds")
+        public int rounds;
+
+        @Label("Correct Answers")
+        public int correctAnswers;
+
+        @Label("Wrong Answers")
+        public int wrongAnswers;
+
+        @Label("Damage Taken")
+        public int damageTaken;
+
+        @Label("Player Health")
+        @Description("At the end of the fight")
+        public int playerHealth;
+
+        @Label("Outcome")
+        @Description("won, lost, ran or closed")
+        public String outcome;
+    }
+}
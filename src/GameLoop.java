@@ -0,0 +1,115 @@
+/**
+ * Fixed-timestep game loop running on its own thread. The simulation is advanced in
+ * steps of exactly 1/ticksPerSecond, while frames are rendered as often as the target
+ * frame rate allows, with an interpolation factor describing how far the current
+ * frame lies between the last two simulation steps. When nothing needs drawing the loop
+ * sleeps until the next step instead of pacing frames.
+ */
+public class GameLoop implements Runnable {
+    static final int MAX_UPDATES_PER_FRAME = 5;  // Drop simulation time instead of spiralling after a stall
+    private static final long SPIN_THRESHOLD_NANOS = 2_000_000;  // Busy-wait the last 2 ms for accurate pacing
+
+    /**
+     * The work done by the loop.
+     */
+    public interface Callbacks {
+        /**
+         * Advances the simulation by one fixed step.
+         */
+        void update();
+
+        /**
+         * Draws a frame, or skips it if nothing changed since the last one.
+         *
+         * @param alpha How far the frame lies between the previous and the current simulation step, from 0 to 1.
+         * @return Whether a frame was drawn.
+         */
+        boolean render(float alpha);
+    }
+
+    private final Callbacks callbacks;
+    private final long tickNanos;
+    private final long frameNanos;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param callbacks      The update and render callbacks.
+     * @param ticksPerSecond The number of fixed simulation steps per second.
+     * @param targetFps      The frame rate to render at, or 0 to render as fast as possible.
+     */
+    public GameLoop(Callbacks callbacks, int ticksPerSecond, int targetFps) {
+        this.callbacks = callbacks;
+        this.tickNanos = 1_000_000_000L / ticksPerSecond;
+        this.frameNanos = targetFps > 0 ? 1_000_000_000L / targetFps : 0;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+        }
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        long previousTime = System.nanoTime();
+        long lag = 0;
+
+        while (running) {
+            long frameStart = System.nanoTime();
+            lag += frameStart - previousTime;
+            previousTime = frameStart;
+
+            int updates = 0;
+            while (lag >= tickNanos && updates < MAX_UPDATES_PER_FRAME) {
+                callbacks.update();
+                lag -= tickNanos;
+                updates++;
+            }
+            if (updates == MAX_UPDATES_PER_FRAME) {
+                lag = 0;  // Too far behind, e.g. after a modal dialog; skip ahead
+            }
+
+            if (!callbacks.render((float) lag / tickNanos)) {
+                waitUntil(frameStart + tickNanos - lag, false);  // Idle: nothing to draw before the next step
+            } else if (frameNanos > 0) {
+                waitUntil(frameStart + frameNanos, true);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    // Sleep for most of the remaining frame time, then spin for the rest if asked to
+    private void waitUntil(long deadline, boolean spin) {
+        long threshold = spin ? SPIN_THRESHOLD_NANOS : 0;
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > threshold) {
+                try {
+                    Thread.sleep((remaining - threshold) / 1_000_000, (int) ((remaining - threshold) % 1_000_000));
+                } catch (InterruptedException e) {
+                    return;  // Interrupted by stop()
+                }
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+}
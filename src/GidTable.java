@@ -0,0 +1,218 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves global tile IDs (GIDs) to their tileset, local tile id, tile image and animation.
+ * Every lookup is a single array access indexed by GID; the tile images are
+ * sliced out of their tileset images once when the table is built.
+ *
+ * Unless disabled, the tilesets of the map are copied into a TileAtlas, so every tile is
+ * a rectangle on one of a few pages in the screen's pixel format. drawTile() draws from
+ * those pages directly. The table keeps no reference to the tileset images, so the map can
+ * hand them back to the TilesetRegistry once the atlas is packed.
+ */
+public class GidTable {
+    // Tiled stores flip/rotation flags in the top bits of a GID
+    public static final int GID_MASK = 0x1FFFFFFF;
+    // Pack tilesets into atlas pages, disable with -Dtmx.atlas=false to draw from the tileset images
+    private static final boolean USE_ATLAS = !"false".equals(System.getProperty("tmx.atlas"));
+
+    private final TmxParser.Tileset[] tilesets;
+    private final int[] localIds;
+    private final BufferedImage[] images;
+    private final BufferedImage[] sources;  // Atlas page (or tileset image) holding each tile
+    private final int[] sourceX, sourceY;  // Top left corner of each tile on its source
+    private final TmxParser.Animation[] animations;
+    private final TileAtlas atlas;  // Null if disabled
+
+    /**
+     * Builds the table for the given tilesets.
+     *
+     * @param tilesets      The tilesets of a parsed map.
+     * @param tilesetImages The image of each tileset, or null where it could not be loaded.
+     * @param animations    The animated tiles of the map, keyed by GID.
+     */
+    public GidTable(List<TmxParser.Tileset> tilesets, List<BufferedImage> tilesetImages, Map<Integer, TmxParser.Animation> animations) {
+        int size = 1;  // GID 0 is always the empty tile
+        for (TmxParser.Tileset tileset : tilesets) {
+            if (tileset != null) {
+                size = Math.max(size, tileset.firstGid + tileset.tileCount);
+            }
+        }
+
+        this.tilesets = new TmxParser.Tileset[size];
+        this.localIds = new int[size];
+        this.images = new BufferedImage[size];
+        this.sources = new BufferedImage[size];
+        this.sourceX = new int[size];
+        this.sourceY = new int[size];
+        this.animations = new TmxParser.Animation[size];
+
+        // The part of each tileset image that holds tiles
+        int[] usedWidths = new int[tilesets.size()];
+        int[] usedHeights = new int[tilesets.size()];
+        for (int i = 0; i < tilesets.size(); i++) {
+            TmxParser.Tileset tileset = tilesets.get(i);
+            if (tileset != null && tileset.columns > 0) {
+                int rows = (tileset.tileCount + tileset.columns - 1) / tileset.columns;
+                usedWidths[i] = tileset.columns * tileset.tileWidth;
+                usedHeights[i] = rows * tileset.tileHeight;
+            }
+        }
+
+        if (USE_ATLAS) {
+            atlas = new TileAtlas(TileAtlas.DEFAULT_PAGE_SIZE);
+            int[] slots = new int[tilesets.size()];
+            for (int i = 0; i < tilesets.size(); i++) {
+                if (tilesets.get(i) != null && tilesetImages.get(i) != null) {
+                    slots[i] = atlas.add(tilesetImages.get(i), usedWidths[i], usedHeights[i]);
+                }
+            }
+            atlas.pack();
+            for (int i = 0; i < tilesets.size(); i++) {
+                if (tilesets.get(i) != null && tilesetImages.get(i) != null) {
+                    // Only the copied part of the tileset image is on the page
+                    int width = Math.min(usedWidths[i], tilesetImages.get(i).getWidth());
+                    int height = Math.min(usedHeights[i], tilesetImages.get(i).getHeight());
+                    addTileset(tilesets.get(i), atlas.getPage(slots[i]), atlas.getX(slots[i]), atlas.getY(slots[i]), width, height);
+                } else if (tilesets.get(i) != null) {
+                    addTileset(tilesets.get(i), null, 0, 0, 0, 0);
+                }
+            }
+        } else {
+            atlas = null;
+            for (int i = 0; i < tilesets.size(); i++) {
+                BufferedImage image = tilesetImages.get(i);
+                if (tilesets.get(i) != null) {
+                    addTileset(tilesets.get(i), image, 0, 0, image != null ? image.getWidth() : 0, image != null ? image.getHeight() : 0);
+                }
+            }
+        }
+        for (Map.Entry<Integer, TmxParser.Animation> entry : animations.entrySet()) {
+            if (entry.getKey() < size) {
+                this.animations[entry.getKey()] = entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * @param source The image holding the tileset's tiles, or null if it could not be loaded.
+     * @param x      Left edge of the tileset on the source.
+     * @param y      Top edge of the tileset on the source.
+     * @param width  Width of the tileset on the source, tiles beyond it have no image.
+     * @param height Height of the tileset on the source.
+     */
+    private void addTileset(TmxParser.Tileset tileset, BufferedImage source, int x, int y, int width, int height) {
+        for (int localId = 0; localId < tileset.tileCount; localId++) {
+            int gid = tileset.firstGid + localId;
+            tilesets[gid] = tileset;
+            localIds[gid] = localId;
+
+            if (source != null && tileset.columns > 0) {
+                int tileX = (localId % tileset.columns) * tileset.tileWidth;
+                int tileY = (localId / tileset.columns) * tileset.tileHeight;
+                if (tileX + tileset.tileWidth <= width && tileY + tileset.tileHeight <= height) {
+                    sources[gid] = source;
+                    sourceX[gid] = x + tileX;
+                    sourceY[gid] = y + tileY;
+                    images[gid] = source.getSubimage(x + tileX, y + tileY, tileset.tileWidth, tileset.tileHeight);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws a tile straight from its atlas page, scaled to the given size. Cheaper than
+     * drawing getImage(), since all tiles on a page share one cached surface.
+     *
+     * @param g      The graphics context.
+     * @param gid    The global tile ID, flip flags are ignored.
+     * @param x      Left edge of the tile on g.
+     * @param y      Top edge of the tile on g.
+     * @param width  Width to draw the tile with.
+     * @param height Height to draw the tile with.
+     * @return False if the tile has no image.
+     */
+    public boolean drawTile(Graphics g, int gid, int x, int y, int width, int height) {
+        gid &= GID_MASK;
+        if (gid >= sources.length || sources[gid] == null) {
+            return false;
+        }
+        TmxParser.Tileset tileset = tilesets[gid];
+        int sx = sourceX[gid];
+        int sy = sourceY[gid];
+        g.drawImage(sources[gid], x, y, x + width, y + height, sx, sy, sx + tileset.tileWidth, sy + tileset.tileHeight, null);
+        return true;
+    }
+
+    /**
+     * @param gid The global tile ID, flip flags are ignored.
+     * @return The tile image, or null for empty or unknown tiles.
+     */
+    public BufferedImage getImage(int gid) {
+        gid &= GID_MASK;
+        return gid < images.length ? images[gid] : null;
+    }
+
+    /**
+     * @param gid The global tile ID, flip flags are ignored.
+     * @return The tileset containing the tile, or null for empty or unknown tiles.
+     */
+    public TmxParser.Tileset getTileset(int gid) {
+        gid &= GID_MASK;
+        return gid < tilesets.length ? tilesets[gid] : null;
+    }
+
+    /**
+     * @param gid The global tile ID, flip flags are ignored.
+     * @return The tile's id within its tileset, or -1 for empty or unknown tiles.
+     */
+    public int getLocalId(int gid) {
+        gid &= GID_MASK;
+        return gid < tilesets.length && tilesets[gid] != null ? localIds[gid] : -1;
+    }
+
+    /**
+     * @param gid The global tile ID, flip flags are ignored.
+     * @return The tile's animation, or null for static tiles.
+     */
+    public TmxParser.Animation getAnimation(int gid) {
+        gid &= GID_MASK;
+        return gid < animations.length ? animations[gid] : null;
+    }
+
+    /**
+     * Gets the image of a frame of an animated tile. Frame ids are local to the
+     * tileset of the animated tile.
+     *
+     * @param gid         The global tile ID of the animated tile.
+     * @param frameTileId The local tile id of the frame.
+     * @return The frame image, or null if the tile is unknown.
+     */
+    public BufferedImage getFrameImage(int gid, int frameTileId) {
+        int frameGid = getFrameGid(gid, frameTileId);
+        return frameGid != 0 ? getImage(frameGid) : null;
+    }
+
+    /**
+     * @param gid         The global tile ID of the animated tile.
+     * @param frameTileId The local tile id of the frame.
+     * @return The global tile ID of the frame, or 0 if the tile is unknown.
+     */
+    public int getFrameGid(int gid, int frameTileId) {
+        TmxParser.Tileset tileset = getTileset(gid);
+        return tileset != null ? tileset.firstGid + frameTileId : 0;
+    }
+
+    // The atlas the tiles are drawn from, or null if tilesets are drawn directly
+    public TileAtlas getAtlas() {
+        return atlas;
+    }
+
+    // Number of GID slots in the table (highest GID + 1)
+    public int size() {
+        return images.length;
+    }
+}
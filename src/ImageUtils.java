@@ -1,9 +1,17 @@
-import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Transparency;
 import java.awt.image.BufferedImage;
-import java.io.File;
+import java.awt.image.ColorModel;
 import java.util.List;
 
 public class ImageUtils {
+    // Memory for cached sprites, set with -Dgame.spriteCacheMB=32
+    private static final SpriteCache SPRITES = new SpriteCache(
+            Integer.getInteger("game.spriteCacheMB", (int) (SpriteCache.DEFAULT_BUDGET_BYTES >> 20)) * 1024L * 1024);
 
     /**
      * Retrieves the tile image corresponding to the given GID from the tileset.
@@ -16,41 +24,46 @@ public class ImageUtils {
         if (gid == 0) {
             return null;  // Skip blank tiles
         }
-
-        for (TmxParser.Tileset tileset : parser.getTilesets()) {
-            if (gid >= tileset.firstGid && gid < tileset.firstGid + tileset.tileCount) {
-                int localTileId = gid - tileset.firstGid;
-                int tileX = (localTileId % tileset.columns) * tileset.tileWidth;
-                int tileY = (localTileId / tileset.columns) * tileset.tileHeight;
-                try {
-                    // Load the tileset image
-                    BufferedImage tilesetImage = loadImage("resources/assets/" + tileset.imageSource);
-                    if (tilesetImage != null) {
-                        // Crop the specific tile from the tileset
-                        return tilesetImage.getSubimage(tileX, tileY, tileset.tileWidth, tileset.tileHeight);
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-        return null;  // Return null if no valid tile image is found
+        return parser.getGidTable().getImage(gid);  // Null if no valid tile image is found
     }
 
     /**
-     * Loads an image from a file path.
+     * Loads an image from a file path. The file is only read the first time; the
+     * returned image is shared and must not be modified.
      *
      * @param path The path to the image file.
      * @return The BufferedImage if found, or null otherwise.
      */
     public static BufferedImage loadImage(String path) {
-        try {
-            return ImageIO.read(new File(path));
-        } catch (Exception e) {
-            System.err.println("Failed to load image: " + path);
-            e.printStackTrace();
-            return null;
-        }
+        return SPRITES.get(path);
+    }
+
+    /**
+     * Cuts a sprite out of an image file, e.g. one frame of a sprite sheet. The result is
+     * cached and shares its pixels with the whole image.
+     *
+     * @param path The path to the image file.
+     * @param x    Left edge of the sprite in pixels.
+     * @param y    Top edge of the sprite in pixels.
+     * @param w    Width of the sprite in pixels.
+     * @param h    Height of the sprite in pixels.
+     * @return The sprite, or null if the image could not be loaded or does not contain it.
+     */
+    public static BufferedImage getSprite(String path, int x, int y, int w, int h) {
+        return SPRITES.get(path, new Rectangle(x, y, w, h));
+    }
+
+    /**
+     * Loads images before they are first drawn, so no frame has to wait for the disk.
+     *
+     * @param paths The paths to the image files.
+     */
+    public static void warmUp(String... paths) {
+        SPRITES.warmUp(paths);
+    }
+
+    public static SpriteCache getSpriteCache() {
+        return SPRITES;
     }
 
     /**
@@ -64,12 +77,59 @@ public class ImageUtils {
      */
     public static BufferedImage getAnimationFrame(TmxParser parser, int gid, int elapsedTime,
                                                   List<TmxParser.Animation> animationMap) {
-        TmxParser.Animation animation = parser.getAnimations().get(gid);
+        TmxParser.Animation animation = parser.getGidTable().getAnimation(gid);
         if (animation != null) {
             int frameTime = elapsedTime % animation.totalDuration;
             TmxParser.Frame frame = animation.getFrameForTime(frameTime);
-            return getTileImage(parser, frame.tileId + gid);  // Get the frame's tile ID relative to the GID
+            return parser.getGidTable().getFrameImage(gid, frame.tileId);  // Frame ids are relative to the tileset
         }
         return null;
     }
+
+    /**
+     * Creates a translucent image in the screen's native pixel format, which Java2D can
+     * keep in video memory and draw without converting pixels.
+     *
+     * @param width  The image width in pixels.
+     * @param height The image height in pixels.
+     * @return The new, fully transparent image.
+     */
+    public static BufferedImage createCompatibleImage(int width, int height) {
+        GraphicsConfiguration config = getScreenConfiguration();
+        if (config == null) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);  // No screen to match
+        }
+        return config.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * Copies an image into the screen's native pixel format, unless it already has it.
+     * Decoded PNGs often come out as byte-packed or indexed images that Java2D has to
+     * convert every time they are drawn.
+     *
+     * @param image The image to convert.
+     * @return The image itself, or a compatible copy.
+     */
+    public static BufferedImage toCompatibleImage(BufferedImage image) {
+        GraphicsConfiguration config = getScreenConfiguration();
+        ColorModel model = config != null ? config.getColorModel(Transparency.TRANSLUCENT) : ColorModel.getRGBdefault();
+        if (image.getColorModel().equals(model)) {
+            return image;
+        }
+
+        BufferedImage compatible = createCompatibleImage(image.getWidth(), image.getHeight());
+        Graphics2D g = compatible.createGraphics();
+        g.setComposite(AlphaComposite.Src);
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return compatible;
+    }
+
+    // Null when running headless
+    private static GraphicsConfiguration getScreenConfiguration() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return null;
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+    }
 }
@@ -1,61 +1,152 @@
+import java.awt.event.FocusEvent;
+import java.awt.event.FocusListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import java.util.Arrays;
 import java.util.List;
 
-public class InputHandler extends KeyAdapter {
-    private static final int MOVE_DISTANCE = 15;  // Movement distance
-    private static final int COOLDOWN_PERIOD = 100;  // Cooldown period in milliseconds
+/**
+ * Keeps track of the keys held down and moves the character once per simulation step
+ * (update()), at a fixed speed in pixels per second. Movement doesn't depend on the
+ * operating system's key repeat rate, and holding two keys moves diagonally.
+ *
+ * Touching an enemy opens the fight screen on the EDT, without the game lock, so the game
+ * keeps rendering behind it; the character stands still until the fight is over.
+ *
+ * Key events and update() must be called under the game lock, or on a single thread.
+ */
+public class InputHandler extends KeyAdapter implements FocusListener {
+    // Movement speed in pixels per second, set with -Dgame.playerSpeed=150
+    public static final float DEFAULT_SPEED = Integer.getInteger("game.playerSpeed", 150);
+    private static final float DIAGONAL = (float) Math.sqrt(0.5);  // Keeps diagonal speed equal to straight speed
 
     private Character character;
     private TmxParser parser;
     private JFrame parentFrame;
-    private long lastMoveTime;
     private List<Question> questions;  // List of questions
-    private int currentQuestionIndex = 0;  // Track current question
+    private final Object gameLock;
+    private final long[] heldKeys = new long[4];  // One bit per key code below 256
+    private float speed = DEFAULT_SPEED;
+    private boolean fighting;  // A fight is open, or about to open, on the EDT
+    private FrameStats frameStats = FrameStats.NONE;  // Shown and hidden with F3
 
     public InputHandler(Character character, TmxParser parser, JFrame parentFrame, List<Question> questions) {
+        this(character, parser, parentFrame, questions, new Object());
+    }
+
+    /**
+     * @param gameLock The lock held while the game is updated and drawn; the result of a fight
+     *                 is applied under it.
+     */
+    public InputHandler(Character character, TmxParser parser, JFrame parentFrame, List<Question> questions, Object gameLock) {
         this.character = character;
         this.parser = parser;
         this.parentFrame = parentFrame;
         this.questions = questions;  // Inject questions
-        this.lastMoveTime = 0;
+        this.gameLock = gameLock;
+    }
+
+    // Time collision checks, and let F3 toggle the performance overlay
+    public void setFrameStats(FrameStats frameStats) {
+        this.frameStats = frameStats;
+    }
+
+    // Movement speed in pixels per second
+    public void setSpeed(float speed) {
+        this.speed = speed;
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastMoveTime >= COOLDOWN_PERIOD) {
-            handleMovement(e.getKeyCode());
-            lastMoveTime = currentTime;
+        if (e.getKeyCode() == KeyEvent.VK_F3) {
+            frameStats.toggle();
+            return;
         }
+        setHeld(e.getKeyCode(), true);
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        setHeld(e.getKeyCode(), false);
+    }
+
+    @Override
+    public void focusGained(FocusEvent e) {
+    }
+
+    // Dialogs take the key releases with the focus, so forget every key instead of moving on forever
+    @Override
+    public void focusLost(FocusEvent e) {
+        releaseAll();
     }
 
-    private void handleMovement(int keyCode) {
-        Question currentQuestion = getNextQuestion();
-        switch (keyCode) {
-            case KeyEvent.VK_W:
-                character.move(0, -MOVE_DISTANCE, parser, parentFrame, currentQuestion, questions);
-                break;
-            case KeyEvent.VK_S:
-                character.move(0, MOVE_DISTANCE, parser, parentFrame, currentQuestion, questions);
-                break;
-            case KeyEvent.VK_A:
-                character.move(-MOVE_DISTANCE, 0, parser, parentFrame, currentQuestion, questions);
-                break;
-            case KeyEvent.VK_D:
-                character.move(MOVE_DISTANCE, 0, parser, parentFrame, currentQuestion, questions);
-                break;
+    /**
+     * Moves the character for one simulation step by the keys held now, then picks up
+     * apples and starts fights at the new position.
+     *
+     * @param seconds The length of the step.
+     */
+    public void update(float seconds) {
+        if (fighting) {
+            return;
+        }
+        int directionX = (isHeld(KeyEvent.VK_D) ? 1 : 0) - (isHeld(KeyEvent.VK_A) ? 1 : 0);
+        int directionY = (isHeld(KeyEvent.VK_S) ? 1 : 0) - (isHeld(KeyEvent.VK_W) ? 1 : 0);
+        if (directionX == 0 && directionY == 0) {
+            return;
+        }
+        float distance = speed * seconds * (directionX != 0 && directionY != 0 ? DIAGONAL : 1);
+
+        // Sweep against the wall mask first, so the character stops flush against walls instead of passing through
+        long start = frameStats.start();
+        character.moveBy(directionX * distance, directionY * distance, parser.getCollisionMask());
+        frameStats.stop(FrameStats.COLLISION, start);
+
+        // Then handle apples and enemies at the new position, once per step
+        int enemy = CollisionDetector.collectPickups(character, parser, frameStats);
+        if (enemy >= 0) {
+            startFight(enemy);
         }
     }
 
-    private Question getNextQuestion() {
-        // Return the next question in the list
-        if (questions != null && !questions.isEmpty()) {
-            Question question = questions.get(currentQuestionIndex);
-            currentQuestionIndex = (currentQuestionIndex + 1) % questions.size();  // Loop back to the start
-            return question;
+    // Show the fight on the EDT; update() may run on the game loop thread
+    private void startFight(int enemy) {
+        fighting = true;
+        releaseAll();
+        SwingUtilities.invokeLater(() -> {
+            boolean won = false;
+            try {
+                won = CollisionDetector.fight(character, parser, enemy, parentFrame, questions);
+            } finally {
+                synchronized (gameLock) {
+                    if (won) {
+                        parser.getObjectStore().remove(enemy);  // Remove enemy after the fight
+                    }
+                    fighting = false;
+                    releaseAll();
+                }
+            }
+        });
+    }
+
+    private boolean isHeld(int keyCode) {
+        return (heldKeys[keyCode >>> 6] & (1L << keyCode)) != 0;
+    }
+
+    private void setHeld(int keyCode, boolean held) {
+        if (keyCode < 0 || keyCode >= heldKeys.length * 64) {
+            return;
         }
-        return null;  // Return null if no questions are available
+        if (held) {
+            heldKeys[keyCode >>> 6] |= 1L << keyCode;
+        } else {
+            heldKeys[keyCode >>> 6] &= ~(1L << keyCode);
+        }
+    }
+
+    private void releaseAll() {
+        Arrays.fill(heldKeys, 0);
     }
 }
@@ -0,0 +1,42 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Shows how far a map load got while the player waits for it
+public class LoadingPanel extends JPanel {
+    private final JLabel phaseLabel = new JLabel("Loading...", SwingConstants.CENTER);
+    private final JProgressBar progressBar = new JProgressBar();
+    private final AtomicReference<Object[]> pending = new AtomicReference<>();  // Latest update not shown yet
+
+    public LoadingPanel() {
+        setLayout(new GridBagLayout());
+        phaseLabel.setFont(new Font("Arial", Font.BOLD, 16));
+        progressBar.setPreferredSize(new Dimension(300, 20));
+        progressBar.setIndeterminate(true);
+
+        JPanel content = new JPanel(new BorderLayout(0, 10));
+        content.add(phaseLabel, BorderLayout.NORTH);
+        content.add(progressBar, BorderLayout.CENTER);
+        add(content);
+    }
+
+    // Updates the panel from any thread; updates arriving faster than the EDT draws them are coalesced
+    public TmxParser.LoadListener listener() {
+        return (phase, done, total) -> {
+            if (pending.getAndSet(new Object[]{phase, done, total}) == null) {
+                SwingUtilities.invokeLater(() -> {
+                    Object[] update = pending.getAndSet(null);
+                    setProgress((String) update[0], (Integer) update[1], (Integer) update[2]);
+                });
+            }
+        };
+    }
+
+    // Call on the EDT
+    public void setProgress(String phase, int done, int total) {
+        phaseLabel.setText(phase + "...");
+        progressBar.setIndeterminate(total <= 1);  // Single-step phases have nothing to count
+        progressBar.setMaximum(Math.max(1, total));
+        progressBar.setValue(done);
+    }
+}
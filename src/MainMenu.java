@@ -1,12 +1,23 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class MainMenu extends JFrame {
+    static final String DEFAULT_MAP = "resources/assets/med_5.tmx";
+
     private List<Question> questions;  // Store questions globally
+    private final LoadingPanel loadingPanel = new LoadingPanel();
+    private CompletableFuture<TmxParser> mapLoad;  // Loads while the player enters questions
 
     public MainMenu() {
+        // Start loading the map and the player sprite right away, off the EDT
+        mapLoad = loadMap();
+
         // Set up the main frame
         setTitle("Game Menu");
         setSize(400, 200);
@@ -37,6 +48,21 @@ public class MainMenu extends JFrame {
         });
     }
 
+    // Load the map and the player sprite off the EDT. Fails if the map file itself can't be read;
+    // missing tilesets only leave their tiles blank.
+    private CompletableFuture<TmxParser> loadMap() {
+        return TmxParser.loadAsync(DEFAULT_MAP, loadingPanel.listener()).thenApply(parser -> {
+            for (AssetLoadException error : parser.getLoadErrors()) {
+                if (error.getPath().equals(parser.getPath())) {
+                    parser.dispose();
+                    throw new CompletionException(error);
+                }
+            }
+            ImageUtils.warmUp(TmxMapExample.PLAYER_SPRITE);
+            return parser;
+        });
+    }
+
     // Method to start the game
     private void startGame() {
         if (questions == null || questions.isEmpty()) {
@@ -44,18 +70,53 @@ public class MainMenu extends JFrame {
             return;
         }
 
-        // Create a new JFrame for the game
+        // Create a new JFrame for the game, showing the load progress until the map is ready
         JFrame gameFrame = new JFrame("TMX Map Example with Camera, Zoom, and Collision Detection");
-        TmxMapExample gamePanel = new TmxMapExample("resources/assets/med_5.tmx", questions);  // Pass questions
-        gameFrame.setContentPane(gamePanel);
         gameFrame.setSize(800, 600);
-        gameFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        // Dispose the frame before exiting, so the game gets to release its map (see TmxMapExample.removeNotify)
+        gameFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        gameFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                if (!isVisible()) {
+                    System.exit(0);  // Unless the menu came back after a failed load
+                }
+            }
+        });
+        if (mapLoad.isCompletedExceptionally()) {
+            mapLoad = loadMap();  // The last attempt failed, try again
+        }
+        if (mapLoad.isDone()) {
+            showGame(gameFrame, mapLoad.join());
+        } else {
+            gameFrame.setContentPane(loadingPanel);
+            mapLoad.whenComplete((parser, error) -> SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    String message = cause instanceof AssetLoadException ? cause.getMessage() : "Failed to load " + DEFAULT_MAP + ": " + cause;
+                    System.err.println(message);
+                    JOptionPane.showMessageDialog(gameFrame, "The map could not be loaded.\n" + message, "Loading Failed", JOptionPane.ERROR_MESSAGE);
+                    setVisible(true);
+                    gameFrame.dispose();
+                    return;
+                }
+                showGame(gameFrame, parser);
+            }));
+        }
         gameFrame.setVisible(true);
 
         // Hide the main menu once the game starts
         this.setVisible(false);
     }
 
+    // Put the game into its frame, on the EDT once the map has loaded
+    private void showGame(JFrame gameFrame, TmxParser parser) {
+        TmxMapExample gamePanel = new TmxMapExample(parser, questions);  // Pass questions
+        gameFrame.setContentPane(gamePanel);
+        gameFrame.revalidate();
+        gamePanel.requestFocusInWindow();
+    }
+
     public static void main(String[] args) {
         // Show the main menu
         MainMenu menu = new MainMenu();
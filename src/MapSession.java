@@ -0,0 +1,184 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * One player's game on a map that other sessions play at the same time. The map (tiles,
+ * tilesets, animations, objects, their spatial index and the collision mask) is only read;
+ * everything a player changes lives in the session: the character, the objects they
+ * picked up or defeated, and the fight in progress. A session costs a few hundred bytes
+ * plus one bit per map object, so hosting another player never copies the map.
+ *
+ * The rules are the ones of the single player game: walls stop the character, apples
+ * restore health and enemies start a fight, played with CombatEngine. Unlike the game,
+ * a move stops at the first enemy touched; the rest is handled by the next move.
+ *
+ * Not thread-safe: drive each session from one thread at a time. Any number of sessions
+ * can share a map: the first session freezes its ObjectStore, so nothing removes objects
+ * from under the others.
+ */
+public class MapSession {
+    public static final int START_X = 50, START_Y = 50;
+    public static final int CHARACTER_SIZE = 32;
+    public static final int MAX_STEP = 15;  // Farthest one move may go along each axis, in map pixels
+
+    private final TmxParser map;
+    private final ObjectStore objects;
+    private final List<Question> questions;
+    private final RandomGenerator random;
+    private final Character character;
+
+    // Objects this player removed, one bit per ObjectStore handle
+    private final long[] removed;
+    private int removedCount;
+
+    private int[] candidates = new int[16];  // Spatial index results, owned by this session
+
+    // The fight in progress, if any
+    private CombatEngine engine;
+    private int enemy = -1;
+    private Question question;
+
+    /**
+     * @param map       The shared map; only read. Its ObjectStore is frozen.
+     * @param questions The questions asked in fights, or null for none.
+     * @param random    Rolls the enemies' damage.
+     */
+    public MapSession(TmxParser map, List<Question> questions, RandomGenerator random) {
+        this.map = map;
+        this.objects = map.getObjectStore();
+        objects.freeze();
+        this.questions = questions;
+        this.random = random;
+        this.character = new Character(TmxMapExample.PLAYER_SPRITE, START_X, START_Y, CHARACTER_SIZE, CHARACTER_SIZE);
+        this.removed = new long[(objects.size() + 63) >>> 6];
+    }
+
+    /**
+     * Moves the character, stopping at walls, then picks up the apples it touches. Touching
+     * an enemy starts a fight; play it with playRound() before moving again.
+     *
+     * @param dx At most MAX_STEP pixels either way, so players walk instead of jumping across the map.
+     * @param dy At most MAX_STEP pixels either way.
+     * @return The handle of the enemy fought, or -1 if no fight started.
+     * @throws IllegalArgumentException If the step is too long.
+     * @throws IllegalStateException If a fight is in progress.
+     */
+    public int move(int dx, int dy) {
+        if (dx < -MAX_STEP || dx > MAX_STEP || dy < -MAX_STEP || dy > MAX_STEP) {
+            throw new IllegalArgumentException("Move at most " + MAX_STEP + " pixels at a time");
+        }
+        if (isFighting()) {
+            throw new IllegalStateException("Finish the fight first");
+        }
+        CollisionMask mask = map.getCollisionMask();
+        int width = character.getWidth();
+        int height = character.getHeight();
+        character.setX(mask.sweepX(character.getX(), character.getY(), width, height, dx));
+        character.setY(mask.sweepY(character.getX(), character.getY(), width, height, dy));
+
+        // Query the shared index into this session's own array; handles come out in map order
+        int count;
+        while ((count = objects.getIndex().query(character.getX(), character.getY(), width, height, candidates)) > candidates.length) {
+            candidates = Arrays.copyOf(candidates, Math.max(count, candidates.length * 2));
+        }
+        for (int i = 0; i < count; i++) {
+            int handle = candidates[i];
+            if (isRemoved(handle) || !CollisionDetector.isColliding(character, objects, handle)) {
+                continue;
+            }
+            int flags = objects.getFlags(handle);
+            if ((flags & ObjectStore.FLAG_PICKUP) != 0) {
+                character.setHealth(character.getHealth() + CollisionDetector.APPLE_HEALTH);
+                remove(handle);
+            } else if ((flags & ObjectStore.FLAG_ENEMY) != 0) {
+                startFight(handle);
+                return handle;
+            }
+        }
+        return -1;
+    }
+
+    private void startFight(int handle) {
+        if (engine == null) {
+            engine = new CombatEngine(character.getHealth(), questions, random);
+        } else {
+            engine.reset(character.getHealth());
+        }
+        enemy = handle;
+        question = engine.nextQuestion();
+    }
+
+    /**
+     * Plays a round of the fight in progress with the player's answer to getQuestion().
+     * Running away, losing and winning end the fight; a defeated enemy is removed.
+     *
+     * @param answer The answer, or null for none.
+     * @return The outcome of the fight after the round. Look the round up with getFight().
+     * @throws IllegalStateException If no fight is in progress.
+     */
+    public CombatEngine.Outcome playRound(CombatEngine.Action action, String answer) {
+        if (!isFighting()) {
+            throw new IllegalStateException("Not in a fight");
+        }
+        CombatEngine.Outcome outcome = engine.play(action, action == CombatEngine.Action.RUN ? null : question, answer);
+        if (engine.wasLastAnswerCorrect()) {
+            character.setXP(character.getXP() + CombatEngine.XP_PER_CORRECT_ANSWER);
+        }
+        character.setHealth(character.getHealth() - engine.getLastDamageTaken());
+
+        if (engine.isOver()) {
+            if (outcome == CombatEngine.Outcome.WON) {
+                remove(enemy);
+            }
+            enemy = -1;
+            question = null;
+        } else {
+            question = engine.nextQuestion();
+        }
+        return outcome;
+    }
+
+    private void remove(int handle) {
+        if (!isRemoved(handle)) {
+            removed[handle >>> 6] |= 1L << handle;
+            removedCount++;
+        }
+    }
+
+    // Whether this player picked up or defeated the object
+    public boolean isRemoved(int handle) {
+        return (removed[handle >>> 6] & (1L << handle)) != 0;
+    }
+
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    public boolean isFighting() {
+        return enemy >= 0;
+    }
+
+    // The enemy of the fight in progress, -1 if there is none
+    public int getEnemy() {
+        return enemy;
+    }
+
+    // The question of the next round of the fight, null if there is none
+    public Question getQuestion() {
+        return question;
+    }
+
+    // The fight in progress or the last one, with the results of its last round; null before the first fight
+    public CombatEngine getFight() {
+        return engine;
+    }
+
+    public Character getCharacter() {
+        return character;
+    }
+
+    public TmxParser getMap() {
+        return map;
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Map objects compiled into parallel primitive arrays. Every object gets a stable
+ * integer handle (its position in map order); its kind and behaviour flags are derived
+ * once from the free-form name and properties, so collision code never compares strings
+ * or looks up properties. Removed objects are cleared from an alive bitmap and
+ * swap-removed from a dense list of live handles, both in O(1). The parsed MapObject of
+ * every handle stays available as a side table for callers that need names or
+ * arbitrary properties.
+ */
+public class ObjectStore {
+    public enum Kind { WALL, APPLE, ENEMY, OTHER }
+
+    // Behaviour flags
+    public static final int FLAG_SOLID = 1;        // Blocks movement ("wall")
+    public static final int FLAG_PICKUP = 1 << 1;  // Restores health when touched ("apple")
+    public static final int FLAG_ENEMY = 1 << 2;   // Starts a fight when touched (is_enemy=true)
+    public static final int FLAG_DRAWN = 1 << 3;   // Has a tile image (gid != 0)
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final int count;
+    private final int[] ids;
+    private final int[] gids;
+    private final float[] xs, ys, widths, heights;
+    private final int[] flags;
+    private final byte[] kinds;
+    private final int[] layerIndices;
+    private final TmxParser.MapObject[] sources;  // Side table with names and properties
+
+    private final long[] alive;
+    private final int[] liveHandles;  // Dense list of live handles, in no particular order
+    private final int[] liveSlots;    // Position of each handle in liveHandles
+    private int liveCount;
+
+    private final SpatialHash index = new SpatialHash(SpatialHash.DEFAULT_CELL_SIZE);
+    private IntConsumer removalListener;  // Told the handle of every removed object, e.g. to redraw where it was
+    private boolean frozen;  // Shared by several sessions, see freeze()
+
+    /**
+     * Compiles the objects of all object layers, in layer order.
+     *
+     * @param objectLayers The parsed object layers.
+     */
+    public ObjectStore(List<TmxParser.ObjectLayer> objectLayers) {
+        int total = 0;
+        for (TmxParser.ObjectLayer objectLayer : objectLayers) {
+            total += objectLayer.getObjects().size();
+        }
+
+        count = total;
+        ids = new int[count];
+        gids = new int[count];
+        xs = new float[count];
+        ys = new float[count];
+        widths = new float[count];
+        heights = new float[count];
+        flags = new int[count];
+        kinds = new byte[count];
+        layerIndices = new int[count];
+        sources = new TmxParser.MapObject[count];
+        alive = new long[(count + 63) >>> 6];
+        liveHandles = new int[count];
+        liveSlots = new int[count];
+
+        int handle = 0;
+        for (int layerIndex = 0; layerIndex < objectLayers.size(); layerIndex++) {
+            for (TmxParser.MapObject mapObject : objectLayers.get(layerIndex).getObjects()) {
+                ids[handle] = mapObject.id;
+                gids[handle] = mapObject.gid;
+                xs[handle] = mapObject.x;
+                ys[handle] = mapObject.y;
+                widths[handle] = mapObject.width;
+                heights[handle] = mapObject.height;
+                flags[handle] = classifyFlags(mapObject);
+                kinds[handle] = (byte) classifyKind(mapObject).ordinal();
+                layerIndices[handle] = layerIndex;
+                sources[handle] = mapObject;
+                mapObject.handle = handle;
+
+                alive[handle >>> 6] |= 1L << handle;
+                liveHandles[handle] = handle;
+                liveSlots[handle] = handle;
+                if (isIndexed(flags[handle])) {
+                    index.insert(handle, mapObject.x, mapObject.y, mapObject.width, mapObject.height);
+                }
+                handle++;
+            }
+        }
+        liveCount = count;
+    }
+
+    private static int classifyFlags(TmxParser.MapObject mapObject) {
+        int result = 0;
+        if ("wall".equals(mapObject.name)) {
+            result |= FLAG_SOLID;
+        }
+        if ("apple".equals(mapObject.name)) {
+            result |= FLAG_PICKUP;
+        }
+        if (mapObject.isEnemy()) {
+            result |= FLAG_ENEMY;
+        }
+        if (mapObject.gid != 0) {
+            result |= FLAG_DRAWN;
+        }
+        return result;
+    }
+
+    private static Kind classifyKind(TmxParser.MapObject mapObject) {
+        if ("wall".equals(mapObject.name)) {
+            return Kind.WALL;
+        }
+        if ("apple".equals(mapObject.name)) {
+            return Kind.APPLE;
+        }
+        if (mapObject.isEnemy()) {
+            return Kind.ENEMY;
+        }
+        return Kind.OTHER;
+    }
+
+    /**
+     * Removes an object in O(1): clears its alive bit, swaps the last live handle into its
+     * slot of the dense list and drops it from the spatial index.
+     *
+     * Only for a map played by a single player: sessions hosted on a shared map keep the
+     * objects they removed in their MapSession instead.
+     *
+     * @param handle The object to remove; removing an already removed object does nothing.
+     * @throws IllegalStateException If the store was frozen.
+     */
+    public void remove(int handle) {
+        if (frozen) {
+            throw new IllegalStateException("Objects of a shared map can't be removed");
+        }
+        if (!isAlive(handle)) {
+            return;
+        }
+        alive[handle >>> 6] &= ~(1L << handle);
+
+        int slot = liveSlots[handle];
+        int last = liveHandles[--liveCount];
+        liveHandles[slot] = last;
+        liveSlots[last] = slot;
+
+        if (isIndexed(flags[handle])) {
+            index.remove(handle, xs[handle], ys[handle], widths[handle], heights[handle]);
+        }
+        if (removalListener != null) {
+            removalListener.accept(handle);
+        }
+    }
+
+    /**
+     * Makes the store and its spatial index read-only, so sessions playing the same map
+     * can read them from several threads. remove() and changes to the index throw from
+     * then on; there is no way back.
+     */
+    public void freeze() {
+        frozen = true;
+        index.freeze();
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    // Be told about removed objects, after they are removed; null to stop
+    public void setRemovalListener(IntConsumer removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    // Invisible walls are static geometry handled by CollisionMask, so they stay out of the spatial index
+    private static boolean isIndexed(int objectFlags) {
+        return (objectFlags & (FLAG_SOLID | FLAG_DRAWN)) != FLAG_SOLID;
+    }
+
+    public boolean isAlive(int handle) {
+        return (alive[handle >>> 6] & (1L << handle)) != 0;
+    }
+
+    public boolean hasFlag(int handle, int flag) {
+        return (flags[handle] & flag) != 0;
+    }
+
+    // Number of objects ever stored; handles range from 0 to size() - 1
+    public int size() {
+        return count;
+    }
+
+    public int getLiveCount() {
+        return liveCount;
+    }
+
+    // The i-th live handle (0 <= i < getLiveCount()), in no particular order
+    public int getLiveHandle(int i) {
+        return liveHandles[i];
+    }
+
+    // Spatial index over every live object except invisible walls
+    public SpatialHash getIndex() {
+        return index;
+    }
+
+    public int getId(int handle) {
+        return ids[handle];
+    }
+
+    public int getGid(int handle) {
+        return gids[handle];
+    }
+
+    public float getX(int handle) {
+        return xs[handle];
+    }
+
+    public float getY(int handle) {
+        return ys[handle];
+    }
+
+    public float getWidth(int handle) {
+        return widths[handle];
+    }
+
+    public float getHeight(int handle) {
+        return heights[handle];
+    }
+
+    public int getFlags(int handle) {
+        return flags[handle];
+    }
+
+    public Kind getKind(int handle) {
+        return KINDS[kinds[handle]];
+    }
+
+    public int getLayerIndex(int handle) {
+        return layerIndices[handle];
+    }
+
+    // The parsed object, for the rare callers that need its name or properties
+    public TmxParser.MapObject getObject(int handle) {
+        return sources[handle];
+    }
+
+    public Map<String, String> getProperties(int handle) {
+        return sources[handle].properties;
+    }
+}
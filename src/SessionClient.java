@@ -0,0 +1,130 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Thin client for a SessionServer on the same machine. Each call sends one request and
+ * returns the fields of the response, e.g. {"STATE", "50", "65", "100", "0", "0"}; see
+ * SessionServer for the protocol.
+ *
+ * Usage: java SessionClient [port], then type w, a, s or d to move, "attack answer",
+ * "defend answer", "run", "state" or "quit".
+ */
+public class SessionClient implements Closeable {
+    private static final int MOVE_DISTANCE = MapSession.MAX_STEP;  // The longest step the server allows
+
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+
+    public SessionClient(int port) throws IOException {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        socket.setTcpNoDelay(true);  // Requests are tiny and wait for their answer
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    public String[] move(int dx, int dy) throws IOException {
+        return request("MOVE", dx, dy);
+    }
+
+    public String[] attack(String answer) throws IOException {
+        return request("ATTACK", answer);
+    }
+
+    public String[] defend(String answer) throws IOException {
+        return request("DEFEND", answer);
+    }
+
+    public String[] run() throws IOException {
+        return request("RUN");
+    }
+
+    public String[] state() throws IOException {
+        return request("STATE");
+    }
+
+    /**
+     * Sends a request and waits for the response.
+     *
+     * @param fields The request name and its arguments.
+     * @return The fields of the response.
+     * @throws EOFException If the server closed the connection.
+     */
+    public String[] request(Object... fields) throws IOException {
+        out.write(SessionServer.fields(fields));
+        out.write('\n');
+        out.flush();
+        String line = in.readLine();
+        if (line == null) {
+            throw new EOFException("Server closed the connection");
+        }
+        return line.split("\t", -1);
+    }
+
+    // Say goodbye to the server and disconnect
+    @Override
+    public void close() throws IOException {
+        try {
+            request("QUIT");
+        } catch (IOException e) {
+            // Already disconnected
+        } finally {
+            socket.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+        try (SessionClient client = new SessionClient(port)) {
+            System.out.println(String.join(" ", client.state()));
+            String line;
+            while ((line = console.readLine()) != null) {
+                String command = line.trim();
+                String answer = command.indexOf(' ') >= 0 ? command.substring(command.indexOf(' ') + 1) : "";
+                String[] response;
+                switch (command.split(" ")[0].toLowerCase()) {
+                    case "w":
+                        response = client.move(0, -MOVE_DISTANCE);
+                        break;
+                    case "s":
+                        response = client.move(0, MOVE_DISTANCE);
+                        break;
+                    case "a":
+                        response = client.move(-MOVE_DISTANCE, 0);
+                        break;
+                    case "d":
+                        response = client.move(MOVE_DISTANCE, 0);
+                        break;
+                    case "attack":
+                        response = client.attack(answer);
+                        break;
+                    case "defend":
+                        response = client.defend(answer);
+                        break;
+                    case "run":
+                        response = client.run();
+                        break;
+                    case "state":
+                        response = client.state();
+                        break;
+                    case "quit":
+                        return;
+                    default:
+                        System.out.println("w/a/s/d, attack <answer>, defend <answer>, run, state or quit");
+                        continue;
+                }
+                System.out.println(String.join(" | ", response));
+            }
+        }
+    }
+}
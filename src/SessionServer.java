@@ -0,0 +1,233 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts game sessions for thin clients (see SessionClient) on the loopback interface. All
+ * sessions play on one loaded map; each connection gets its own MapSession, so another
+ * player costs kilobytes, mostly socket buffers, instead of another copy of the map.
+ *
+ * Each connection is served by one task on the session executor. By default that is a
+ * cached pool of daemon threads; on a JDK with virtual threads, pass
+ * Executors.newVirtualThreadPerTaskExecutor() instead.
+ *
+ * Protocol: the client sends one line per request and gets one line back. Fields are
+ * separated by tabs; tabs and line breaks inside text are sent as spaces.
+ *
+ *   MOVE dx dy      -> STATE x y health xp removed, or FIGHT enemyId enemyName question;
+ *                      dx and dy are at most MapSession.MAX_STEP pixels either way
+ *   ATTACK answer   -> ROUND outcome dealt taken health enemyHealth correct question
+ *   DEFEND answer   -> ROUND ... (same fields)
+ *   RUN             -> ROUND RAN ...
+ *   STATE           -> STATE x y health xp removed
+ *   QUIT            -> BYE, then the server closes the connection
+ *
+ * The question is empty when the map has no questions or the fight is over. Requests
+ * the server can't handle get ERROR message.
+ *
+ * Usage: java SessionServer [map.tmx] [port] [questions.tsv]
+ * where each line of questions.tsv is a question and its answer, separated by a tab.
+ */
+public class SessionServer implements Closeable {
+    private final TmxParser map;
+    private final List<Question> questions;
+    private final ExecutorService sessions;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private ServerSocket serverSocket;
+
+    /**
+     * @param map       The map every session plays on; sessions only read it, so its ObjectStore
+     *                  is frozen here. close() disposes it.
+     * @param questions The questions asked in fights, or null for none.
+     */
+    public SessionServer(TmxParser map, List<Question> questions) {
+        this(map, questions, Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setName("session-" + thread.getId());
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param sessions Runs one task per connection for as long as it stays open.
+     */
+    public SessionServer(TmxParser map, List<Question> questions, ExecutorService sessions) {
+        this.map = map;
+        this.questions = questions;
+        this.sessions = sessions;
+        map.getObjectStore().freeze();
+    }
+
+    /**
+     * Starts accepting connections on the loopback interface.
+     *
+     * @param port The port, or 0 for any free one.
+     * @return The port the server listens on.
+     */
+    public int start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptConnections, "session-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                sessions.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                return;  // Closed
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Play one session until the client quits or disconnects
+    private void serve(Socket socket) {
+        sessionCount.incrementAndGet();
+        MapSession session = new MapSession(map, questions, new SplittableRandom());
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] request = line.split("\t", -1);
+                if (request[0].equals("QUIT")) {
+                    out.write("BYE\n");
+                    out.flush();
+                    break;
+                }
+                out.write(handle(session, request));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away
+        } finally {
+            connections.remove(socket);
+            sessionCount.decrementAndGet();
+        }
+    }
+
+    private String handle(MapSession session, String[] request) {
+        try {
+            switch (request[0]) {
+                case "MOVE": {
+                    int enemy = session.move(Integer.parseInt(request[1]), Integer.parseInt(request[2]));
+                    if (enemy < 0) {
+                        return state(session);
+                    }
+                    ObjectStore objects = map.getObjectStore();
+                    return fields("FIGHT", objects.getId(enemy), objects.getObject(enemy).name, questionText(session));
+                }
+                case "ATTACK":
+                case "DEFEND":
+                case "RUN": {
+                    CombatEngine.Action action = CombatEngine.Action.valueOf(request[0]);
+                    CombatEngine.Outcome outcome = session.playRound(action, request.length > 1 ? request[1] : null);
+                    CombatEngine fight = session.getFight();
+                    return fields("ROUND", outcome, fight.getLastDamageDealt(), fight.getLastDamageTaken(),
+                            session.getCharacter().getHealth(), fight.getEnemyHealth(), fight.wasLastAnswerCorrect(), questionText(session));
+                }
+                case "STATE":
+                    return state(session);
+                default:
+                    return fields("ERROR", "Unknown request " + request[0]);
+            }
+        } catch (IllegalStateException | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {  // Includes NumberFormatException
+            return fields("ERROR", e.getMessage() != null ? e.getMessage() : "Malformed request");
+        }
+    }
+
+    private static String state(MapSession session) {
+        Character character = session.getCharacter();
+        return fields("STATE", character.getX(), character.getY(), character.getHealth(), character.getXP(), session.getRemovedCount());
+    }
+
+    private static String questionText(MapSession session) {
+        Question question = session.getQuestion();
+        return question != null ? question.getQuestion() : "";
+    }
+
+    // Join the fields of a response, keeping text from breaking the line format
+    static String fields(Object... values) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append('\t');
+            }
+            line.append(String.valueOf(values[i]).replace('\t', ' ').replace('\r', ' ').replace('\n', ' '));
+        }
+        return line.toString();
+    }
+
+    // Number of connected sessions
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    // Stop accepting connections, disconnect every session and release the map
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        sessions.shutdown();
+        map.dispose();
+    }
+
+    public static void main(String[] args) throws IOException {
+        String mapPath = args.length > 0 ? args[0] : MainMenu.DEFAULT_MAP;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+
+        List<Question> questions = new ArrayList<>();
+        if (args.length > 2) {
+            for (String line : Files.readAllLines(Paths.get(args[2]), StandardCharsets.UTF_8)) {
+                String[] parts = line.split("\t");
+                if (parts.length >= 2) {
+                    questions.add(new Question(parts[0], parts[1]));
+                }
+            }
+        }
+
+        TmxParser map = new TmxParser(mapPath);
+        SessionServer server = new SessionServer(map, questions);
+        port = server.start(port);
+        System.out.println("Hosting " + mapPath + " with " + questions.size() + " questions on port " + port);
+
+        // Daemon threads serve the sessions; keep the JVM alive until it is stopped
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            server.close();
+        }
+    }
+}
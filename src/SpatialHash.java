@@ -0,0 +1,189 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Uniform-grid index over object bounds. Objects are identified by integer handles;
+ * each handle is stored in every cell its bounding box touches, so a query only has to
+ * look at the handles in the cells overlapped by the query rectangle.
+ */
+public class SpatialHash {
+    public static final int DEFAULT_CELL_SIZE = 64;  // Cell edge length in map pixels
+
+    private final int cellSize;
+    private final Map<Long, int[]> cells = new HashMap<>();  // Cell key -> handles, element 0 holds the count
+    private int[] stamps = new int[16];  // Per-handle query stamp, so objects spanning several cells are reported once
+    private int queryStamp;
+    private int[] results = new int[16];
+    private int resultCount;
+    private boolean frozen;
+
+    public SpatialHash(int cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Adds a handle to every cell the given bounds overlap.
+     *
+     * @throws IllegalStateException If the index was frozen.
+     */
+    public void insert(int handle, float x, float y, float width, float height) {
+        checkNotFrozen();
+        if (handle >= stamps.length) {
+            stamps = Arrays.copyOf(stamps, Math.max(handle + 1, stamps.length * 2));
+        }
+        int maxCellX = cell(x + width);
+        int maxCellY = cell(y + height);
+        for (int cellY = cell(y); cellY <= maxCellY; cellY++) {
+            for (int cellX = cell(x); cellX <= maxCellX; cellX++) {
+                long key = key(cellX, cellY);
+                int[] cell = cells.get(key);
+                if (cell == null) {
+                    cell = new int[5];
+                } else if (cell[0] + 1 == cell.length) {
+                    cell = Arrays.copyOf(cell, cell.length * 2);
+                }
+                cell[++cell[0]] = handle;
+                cells.put(key, cell);
+            }
+        }
+    }
+
+    /**
+     * Removes a handle from every cell the given bounds overlap. The bounds must be the
+     * ones the handle was inserted with.
+     *
+     * @throws IllegalStateException If the index was frozen.
+     */
+    public void remove(int handle, float x, float y, float width, float height) {
+        checkNotFrozen();
+        int maxCellX = cell(x + width);
+        int maxCellY = cell(y + height);
+        for (int cellY = cell(y); cellY <= maxCellY; cellY++) {
+            for (int cellX = cell(x); cellX <= maxCellX; cellX++) {
+                long key = key(cellX, cellY);
+                int[] cell = cells.get(key);
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 1; i <= cell[0]; i++) {
+                    if (cell[i] == handle) {
+                        cell[i] = cell[cell[0]--];  // Order within a cell does not matter
+                        break;
+                    }
+                }
+                if (cell[0] == 0) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the handles in all cells overlapped by a rectangle. The result may contain
+     * handles whose bounds do not intersect the rectangle, but never the same handle twice.
+     * Read the result with getResultCount() and getResult(i); it is overwritten by the next query.
+     *
+     * @return The number of handles found.
+     */
+    public int query(float x, float y, float width, float height) {
+        resultCount = 0;
+        int stamp = ++queryStamp;
+        int maxCellX = cell(x + width);
+        int maxCellY = cell(y + height);
+        for (int cellY = cell(y); cellY <= maxCellY; cellY++) {
+            for (int cellX = cell(x); cellX <= maxCellX; cellX++) {
+                int[] cell = cells.get(key(cellX, cellY));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 1; i <= cell[0]; i++) {
+                    int handle = cell[i];
+                    if (stamps[handle] != stamp) {
+                        stamps[handle] = stamp;
+                        if (resultCount == results.length) {
+                            results = Arrays.copyOf(results, resultCount * 2);
+                        }
+                        results[resultCount++] = handle;
+                    }
+                }
+            }
+        }
+        return resultCount;
+    }
+
+    /**
+     * Same as query(), but collects the handles into the caller's array instead of the
+     * index's own result buffer. Several threads can query at once this way, as long as
+     * nobody inserts or removes handles meanwhile, e.g. once the index is frozen. The
+     * handles come out sorted ascending.
+     *
+     * @param results Receives the handles.
+     * @return The number of handles found. If it is larger than results.length, the array
+     * was too small and holds nothing useful; query again with a larger one.
+     */
+    public int query(float x, float y, float width, float height, int[] results) {
+        int found = 0;
+        int maxCellX = cell(x + width);
+        int maxCellY = cell(y + height);
+        for (int cellY = cell(y); cellY <= maxCellY; cellY++) {
+            for (int cellX = cell(x); cellX <= maxCellX; cellX++) {
+                int[] cell = cells.get(key(cellX, cellY));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 1; i <= cell[0]; i++) {
+                    if (found < results.length) {
+                        results[found] = cell[i];
+                    }
+                    found++;
+                }
+            }
+        }
+        if (found > results.length) {
+            return found;
+        }
+
+        // Objects spanning several cells were collected once per cell; drop the repeats
+        Arrays.sort(results, 0, found);
+        int unique = 0;
+        for (int i = 0; i < found; i++) {
+            if (unique == 0 || results[unique - 1] != results[i]) {
+                results[unique++] = results[i];
+            }
+        }
+        return unique;
+    }
+
+    // Sort the last query's handles ascending, e.g. to draw objects in map order
+    public void sortResults() {
+        Arrays.sort(results, 0, resultCount);
+    }
+
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    public int getResult(int index) {
+        return results[index];
+    }
+
+    // Make the index read-only; insert() and remove() throw from then on
+    public void freeze() {
+        frozen = true;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The index is frozen");
+        }
+    }
+
+    private int cell(float coordinate) {
+        return Math.floorDiv((int) Math.floor(coordinate), cellSize);
+    }
+
+    private static long key(int cellX, int cellY) {
+        return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+    }
+}
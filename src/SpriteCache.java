@@ -0,0 +1,211 @@
+import javax.imageio.ImageIO;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Bounded, thread-safe cache of decoded sprites, keyed by image path and an optional
+ * rectangle within the image. Each file is read from disk once and converted to the
+ * screen's pixel format (see ImageUtils.toCompatibleImage); sprites cut from it are
+ * views that share its pixels. The least recently used entries are evicted once the
+ * decoded images exceed the memory budget. A sprite keeps its whole image alive, so it
+ * counts as a use of that image and is evicted together with it. Paths that failed to
+ * load are remembered too, so a missing file is not looked up again on every frame.
+ *
+ * Files are decoded outside the cache's lock, so threads loading different images don't
+ * wait for each other. Two threads missing the same image at once may both decode it;
+ * only one copy is kept.
+ */
+public class SpriteCache {
+    public static final long DEFAULT_BUDGET_BYTES = 32L * 1024 * 1024;
+    private static final long VIEW_BYTES = 64;  // Sprites cut from a cached image share its pixels
+
+    private static class Entry {
+        final BufferedImage image;  // Null if the file could not be loaded
+        final long bytes;
+        final String parentKey;  // The whole image a sprite was cut from, null for whole images
+        final Entry parent;
+        final Set<String> views = new HashSet<>();  // Keys of the cached sprites cut from a whole image
+
+        Entry(BufferedImage image, long bytes, String parentKey, Entry parent) {
+            this.image = image;
+            this.bytes = bytes;
+            this.parentKey = parentKey;
+            this.parent = parent;
+        }
+    }
+
+    private final long budgetBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);  // Least recently used first
+    private long usedBytes;
+    private long hits, misses;
+
+    /**
+     * @param budgetBytes The maximum memory used by cached images.
+     */
+    public SpriteCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @param path The path of the image file.
+     * @return The whole image, or null if it could not be loaded.
+     */
+    public BufferedImage get(String path) {
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry != null) {
+                hits++;
+                return entry.image;
+            }
+            misses++;
+        }
+        return load(path).image;
+    }
+
+    /**
+     * @param path The path of the image file.
+     * @param area The part of the image to return, e.g. one tile of a sprite sheet.
+     * @return The sprite, or null if the image could not be loaded or does not contain the area.
+     */
+    public BufferedImage get(String path, Rectangle area) {
+        String key = path + "#" + area.x + "," + area.y + "," + area.width + "," + area.height;
+        Entry whole;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                entries.get(entry.parentKey);  // The sprite uses the whole image's pixels, keep it as recent
+                return entry.image;
+            }
+            misses++;
+            whole = entries.get(path);
+        }
+        if (whole == null) {
+            whole = load(path);
+        }
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                return entry.image;  // Cut by another thread meanwhile
+            }
+            Entry cached = entries.get(path);
+            if (cached == null) {
+                put(path, whole);  // Evicted meanwhile, the sprite would hold its pixels uncounted
+            } else {
+                whole = cached;
+            }
+
+            BufferedImage image = whole.image;
+            BufferedImage sprite = null;
+            if (image != null && area.x >= 0 && area.y >= 0
+                    && area.x + area.width <= image.getWidth() && area.y + area.height <= image.getHeight()) {
+                sprite = image.getSubimage(area.x, area.y, area.width, area.height);
+            }
+            put(key, new Entry(sprite, VIEW_BYTES, path, whole));
+            return sprite;
+        }
+    }
+
+    /**
+     * Loads images ahead of time, e.g. while a level loads, so later frames never wait for the disk.
+     *
+     * @param paths The paths of the image files.
+     */
+    public void warmUp(String... paths) {
+        for (String path : paths) {
+            get(path);
+        }
+    }
+
+    // Decode a file without holding the lock, then cache it unless another thread got there first
+    private Entry load(String path) {
+        BufferedImage image = null;
+        try {
+            image = ImageIO.read(new File(path));
+            if (image == null) {
+                System.err.println("Unsupported image format: " + path);
+            } else {
+                image = ImageUtils.toCompatibleImage(image);
+            }
+        } catch (Exception e) {
+            System.err.println("Failed to load image " + path + ": " + e);
+        }
+
+        synchronized (this) {
+            Entry cached = entries.get(path);
+            if (cached != null) {
+                return cached;
+            }
+            Entry entry = new Entry(image, image != null ? (long) image.getWidth() * image.getHeight() * 4 : VIEW_BYTES, null, null);
+            put(path, entry);
+            return entry;
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        // Evict before adding so the new entry is never the one dropped, nor the image a new sprite is cut from
+        while (usedBytes + entry.bytes > budgetBytes) {
+            String eldest = null;
+            for (String candidate : entries.keySet()) {
+                if (!candidate.equals(entry.parentKey)) {
+                    eldest = candidate;
+                    break;
+                }
+            }
+            if (eldest == null) {
+                break;
+            }
+            remove(eldest);
+        }
+        entries.put(key, entry);
+        usedBytes += entry.bytes;
+        if (entry.parent != null) {
+            entry.parent.views.add(key);
+        }
+    }
+
+    // Drop an entry; a whole image takes its sprites with it
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        usedBytes -= entry.bytes;
+        for (String view : entry.views) {
+            Entry sprite = entries.remove(view);
+            if (sprite != null) {
+                usedBytes -= sprite.bytes;
+            }
+        }
+        entry.views.clear();
+        if (entry.parent != null) {
+            entry.parent.views.remove(key);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+}
@@ -0,0 +1,155 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Packs images, e.g. the tilesets of a map, into a few large pages in the screen's native
+ * pixel format. Java2D can keep such pages in video memory, and every tile drawn from one
+ * page comes from the same cached surface. Images are placed on shelves, tallest first; an
+ * image larger than a page gets a page of its own.
+ *
+ * Add the images, call pack() once, then look up where each one was placed.
+ */
+public class TileAtlas {
+    // Edge length of an atlas page in pixels, set with -Dtmx.atlasPageSize=2048
+    public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("tmx.atlasPageSize", 2048);
+
+    private final int pageSize;
+    private final List<BufferedImage> sources = new ArrayList<>();
+    private final List<int[]> sizes = new ArrayList<>();  // Width and height copied from each source
+    private final List<BufferedImage> pages = new ArrayList<>();
+    private int[] pageIndex, x, y;  // Placement of each added image
+    private boolean packed;
+
+    /**
+     * @param pageSize The maximum width and height of a page in pixels.
+     */
+    public TileAtlas(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Queues the top left part of an image for packing.
+     *
+     * @param image  The image to copy from.
+     * @param width  Width of the part to copy.
+     * @param height Height of the part to copy.
+     * @return The slot to look the placement up with after packing.
+     */
+    public int add(BufferedImage image, int width, int height) {
+        if (packed) {
+            throw new IllegalStateException("Atlas already packed");
+        }
+        sources.add(image);
+        sizes.add(new int[]{Math.min(width, image.getWidth()), Math.min(height, image.getHeight())});
+        return sources.size() - 1;
+    }
+
+    // Lay the added images out on pages and copy them over
+    public void pack() {
+        if (packed) {
+            return;
+        }
+        packed = true;
+
+        int count = sources.size();
+        pageIndex = new int[count];
+        x = new int[count];
+        y = new int[count];
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> sizes.get(b)[1] - sizes.get(a)[1]);  // Tallest first, so shelves waste little height
+
+        List<int[]> pageSizes = new ArrayList<>();  // Used width and height of each page
+        int page = -1;
+        int shelfX = 0, shelfY = 0, shelfHeight = 0;
+        for (int slot : order) {
+            int width = sizes.get(slot)[0];
+            int height = sizes.get(slot)[1];
+
+            if (width > pageSize || height > pageSize) {
+                // Too big to share a page
+                pageSizes.add(new int[]{width, height});
+                place(slot, pageSizes.size() - 1, 0, 0);
+                continue;
+            }
+            if (page >= 0 && shelfX + width > pageSize) {
+                // Start a new shelf below the current one
+                shelfY += shelfHeight;
+                shelfX = 0;
+                shelfHeight = 0;
+            }
+            if (page < 0 || shelfY + height > pageSize) {
+                pageSizes.add(new int[]{0, 0});
+                page = pageSizes.size() - 1;
+                shelfX = 0;
+                shelfY = 0;
+                shelfHeight = 0;
+            }
+
+            place(slot, page, shelfX, shelfY);
+            int[] used = pageSizes.get(page);
+            used[0] = Math.max(used[0], shelfX + width);
+            used[1] = Math.max(used[1], shelfY + height);
+            shelfX += width;
+            shelfHeight = Math.max(shelfHeight, height);
+        }
+
+        // Pages are only as large as their contents
+        for (int[] used : pageSizes) {
+            pages.add(ImageUtils.createCompatibleImage(Math.max(1, used[0]), Math.max(1, used[1])));
+        }
+        for (int slot = 0; slot < count; slot++) {
+            Graphics2D g = pages.get(pageIndex[slot]).createGraphics();
+            g.setComposite(AlphaComposite.Src);  // Copy the pixels as they are, including transparent ones
+            int width = sizes.get(slot)[0];
+            int height = sizes.get(slot)[1];
+            g.drawImage(sources.get(slot), x[slot], y[slot], x[slot] + width, y[slot] + height, 0, 0, width, height, null);
+            g.dispose();
+        }
+        sources.clear();  // The atlas no longer needs the originals
+    }
+
+    private void place(int slot, int page, int px, int py) {
+        pageIndex[slot] = page;
+        x[slot] = px;
+        y[slot] = py;
+    }
+
+    /**
+     * @param slot The slot returned by add().
+     * @return The page holding the image.
+     */
+    public BufferedImage getPage(int slot) {
+        return pages.get(pageIndex[slot]);
+    }
+
+    // Left edge of the image on its page
+    public int getX(int slot) {
+        return x[slot];
+    }
+
+    // Top edge of the image on its page
+    public int getY(int slot) {
+        return y[slot];
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    // Memory used by the pages
+    public long getBytes() {
+        long bytes = 0;
+        for (BufferedImage page : pages) {
+            bytes += (long) page.getWidth() * page.getHeight() * 4;
+        }
+        return bytes;
+    }
+}
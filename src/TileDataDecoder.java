@@ -0,0 +1,30 @@
+import java.io.IOException;
+
+/**
+ * Decodes the text of a layer's <data> element into a row-major GID array. The text can
+ * be fed in any number of pieces, as an XML parser delivers it.
+ */
+public interface TileDataDecoder {
+    // Decode the next piece of the element's text
+    void feed(char[] text, int start, int length);
+
+    // The decoded tiles, once all text has been fed
+    int[] finish() throws IOException;
+
+    /**
+     * Picks the decoder for a <data> element's encoding attributes.
+     *
+     * @param encoding    "csv" or "base64".
+     * @param compression null/empty, "zlib" or "gzip" (base64 only).
+     * @param tileCount   The number of tiles in the layer (width * height).
+     */
+    static TileDataDecoder forEncoding(String encoding, String compression, int tileCount) {
+        if ("csv".equals(encoding)) {
+            return new CsvTileDecoder(tileCount);
+        }
+        if ("base64".equals(encoding)) {
+            return new Base64TileDecoder(tileCount, compression);
+        }
+        throw new IllegalArgumentException("Unsupported layer encoding: " + encoding);
+    }
+}
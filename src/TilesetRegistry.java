@@ -0,0 +1,217 @@
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of parsed .tsx files and decoded tileset images, so maps that share
+ * tilesets parse and decode each of them only once. Entries are keyed by canonical path
+ * and modification time, so an edited file is loaded again. Cached values are shared and
+ * must not be modified.
+ *
+ * Maps take entries through a Lease and release them all when they are disposed; maps
+ * that copy their tileset images into an atlas give the images back right after packing.
+ * Entries no lease holds any more stay cached (least recently released first out) until
+ * they exceed the memory cap, so switching back and forth between maps stays cheap.
+ */
+public class TilesetRegistry {
+    // Memory for tilesets no map uses any more, set with -Dtmx.tilesetCacheMB=64
+    public static final long DEFAULT_UNUSED_BYTES = Integer.getInteger("tmx.tilesetCacheMB", 64) * 1024L * 1024;
+    private static final long DEFINITION_BYTES = 1024;  // Rough size of a parsed .tsx
+
+    private static final TilesetRegistry DEFAULT = new TilesetRegistry(DEFAULT_UNUSED_BYTES);
+
+    // Loads an entry's value from its file
+    public interface Loader<T> {
+        T load(String path) throws Exception;
+    }
+
+    private static class Entry {
+        final String key;
+        Object value;
+        long bytes;
+        int references;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    private final long unusedBytesLimit;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final LinkedHashMap<String, Entry> unused = new LinkedHashMap<>();  // Unreferenced entries, oldest first
+    private long unusedBytes;
+    private int hits, misses;
+
+    /**
+     * @param unusedBytesLimit The memory unreferenced entries may keep before they are dropped.
+     */
+    public TilesetRegistry(long unusedBytesLimit) {
+        this.unusedBytesLimit = unusedBytesLimit;
+    }
+
+    public static TilesetRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    public Lease newLease() {
+        return new Lease();
+    }
+
+    /**
+     * The registry entries used by one map. Every entry taken through a lease is held
+     * until the lease is released.
+     */
+    public class Lease {
+        private final List<Entry> held = new ArrayList<>();
+        private boolean released;
+
+        /**
+         * Gets a parsed .tsx file, parsing it on first use.
+         *
+         * @param tsxPath The path of the .tsx file.
+         * @param loader  Parses the file.
+         */
+        public TmxParser.TilesetDefinition tileset(String tsxPath, Loader<TmxParser.TilesetDefinition> loader) throws Exception {
+            return acquire(this, "tsx:", tsxPath, loader, definition -> DEFINITION_BYTES);
+        }
+
+        /**
+         * Gets a decoded image, decoding it on first use.
+         *
+         * @param imagePath The path of the image file.
+         */
+        public BufferedImage image(String imagePath) throws Exception {
+            return acquire(this, "image:", imagePath, path -> {
+                BufferedImage image = ImageIO.read(new File(path));
+                if (image == null) {
+                    throw new IOException("Unsupported image format: " + path);
+                }
+                return image;
+            }, image -> (long) image.getWidth() * image.getHeight() * 4);
+        }
+
+        // Give back the decoded images taken through this lease, e.g. once they were copied into
+        // an atlas. Parsed .tsx files stay held.
+        public void releaseImages() {
+            synchronized (TilesetRegistry.this) {
+                Iterator<Entry> iterator = held.iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (entry.key.startsWith("image:")) {
+                        iterator.remove();
+                        unreference(entry);
+                    }
+                }
+                trimUnused();
+            }
+        }
+
+        // Give back every entry taken through this lease
+        public void release() {
+            synchronized (TilesetRegistry.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                for (Entry entry : held) {
+                    unreference(entry);
+                }
+                held.clear();
+                trimUnused();
+            }
+        }
+    }
+
+    // Count an entry as unused once no lease holds it any more
+    private void unreference(Entry entry) {
+        if (--entry.references == 0 && entry.value != null) {
+            unused.put(entry.key, entry);
+            unusedBytes += entry.bytes;
+        }
+    }
+
+    private interface Sizer<T> {
+        long bytes(T value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T acquire(Lease lease, String kind, String path, Loader<T> loader, Sizer<T> sizer) throws Exception {
+        File file = new File(path);
+        String key = kind + file.getCanonicalPath() + "@" + file.lastModified();
+
+        Entry entry;
+        synchronized (this) {
+            if (lease.released) {
+                throw new IllegalStateException("Lease already released");
+            }
+            entry = entries.computeIfAbsent(key, Entry::new);
+            if (entry.references++ == 0 && unused.remove(key) != null) {
+                unusedBytes -= entry.bytes;
+            }
+            lease.held.add(entry);
+        }
+
+        // Load outside the registry lock, so different files can load at the same time
+        synchronized (entry) {
+            if (entry.value == null) {
+                try {
+                    T value = loader.load(path);
+                    synchronized (this) {
+                        entry.value = value;
+                        entry.bytes = sizer.bytes(value);
+                        misses++;
+                    }
+                } catch (Exception e) {
+                    synchronized (this) {
+                        entry.references--;
+                        lease.held.remove(entry);
+                        if (entry.references == 0) {
+                            entries.remove(key, entry);
+                        }
+                    }
+                    throw e;
+                }
+            } else {
+                synchronized (this) {
+                    hits++;
+                }
+            }
+            return (T) entry.value;
+        }
+    }
+
+    // Drop the least recently released entries until the unused ones fit the cap
+    private void trimUnused() {
+        Iterator<Entry> iterator = unused.values().iterator();
+        while (unusedBytes > unusedBytesLimit && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            entries.remove(entry.key, entry);
+            unusedBytes -= entry.bytes;
+        }
+    }
+
+    // Number of cached entries, used or not
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getUnusedBytes() {
+        return unusedBytes;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,417 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled copy of a map and its tilesets (map.tmx -> map-hash.tmxb), so a map can be loaded
+ * without parsing any XML. The file is memory-mapped and tile arrays are read in place;
+ * only the small parts (tilesets, animations, objects) are copied out.
+ *
+ * Compiled copies live in a cache directory, set with -Dtmx.compiledMapDir=path, by default
+ * tmx-compiled-maps in the temporary directory, so maps can be installed read-only.
+ *
+ * Layout (big-endian):
+ * <pre>
+ * int magic, int version
+ * int sourceCount, {string path, long lastModified, long length}   absolute paths of the files it
+ *                                                                  was compiled from, the map first
+ * int width, height, tileWidth, tileHeight
+ * int tilesetCount, {int firstGid, string image, int tileWidth, tileHeight, tileCount, columns}
+ * int animationCount, {int gid, int frameCount, {int tileId, int duration}}
+ * int layerCount, {string name, int width, height, int animatedCellCount,
+ *                  (pad to 4) int[animatedCellCount] cells, int[width * height] tiles}
+ * int objectLayerCount, {string name, int objectCount, {int id, gid, string name,
+ *                  float x, y, width, height, rotation, int pointCount (-1 = no polygon),
+ *                  float[pointCount * 2], int propertyCount, {string name, string value}}}
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes. A compiled map
+ * is stale, and ignored, as soon as any of its source files changed size or modification
+ * time, or it was written by another version of this class.
+ *
+ * Usage: java TmxBinaryFormat [map.tmx ...]  (compiles every map in resources/assets by default)
+ */
+public class TmxBinaryFormat {
+    private static final int MAGIC = 0x544D5842;  // "TMXB"
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".tmxb";
+    private static final File CACHE_DIR = new File(System.getProperty("tmx.compiledMapDir",
+            new File(System.getProperty("java.io.tmpdir"), "tmx-compiled-maps").getPath()));
+
+    // The compiled file that belongs to a map: named after the map and a hash of its absolute path
+    public static File compiledFile(String tmxPath) {
+        File map = new File(tmxPath).getAbsoluteFile();
+        String name = map.getName().endsWith(".tmx") ? map.getName().substring(0, map.getName().length() - 4) : map.getName();
+        return new File(CACHE_DIR, name + "-" + Integer.toHexString(map.getPath().hashCode()) + EXTENSION);
+    }
+
+    /**
+     * Loads a map from its compiled copy.
+     *
+     * @param target  The parser to fill; it is left untouched unless loading succeeds.
+     * @param tmxPath The path of the .tmx file.
+     * @return Whether an up-to-date compiled copy was found and loaded.
+     */
+    public static boolean read(TmxParser target, String tmxPath) {
+        File file = compiledFile(tmxPath);
+        if (!file.isFile()) {
+            return false;
+        }
+        List<String> sourceFiles = new ArrayList<>();
+        int headerBytes = readHeader(file, tmxPath, sourceFiles);
+        if (headerBytes < 0) {
+            return false;
+        }
+
+        // The mapping stays valid after the channel is closed
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            System.err.println("Could not read compiled map " + file + ": " + e);
+            return false;
+        }
+
+        try {
+            buffer.position(headerBytes);
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int tileWidth = buffer.getInt();
+            int tileHeight = buffer.getInt();
+
+            List<TmxParser.Tileset> tilesets = new ArrayList<>();
+            int tilesetCount = buffer.getInt();
+            for (int i = 0; i < tilesetCount; i++) {
+                int firstGid = buffer.getInt();
+                String imageSource = readString(buffer);
+                tilesets.add(new TmxParser.Tileset(firstGid, imageSource, buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+            }
+
+            Map<Integer, TmxParser.Animation> animations = new LinkedHashMap<>();
+            int animationCount = buffer.getInt();
+            for (int i = 0; i < animationCount; i++) {
+                int gid = buffer.getInt();
+                List<TmxParser.Frame> frames = new ArrayList<>();
+                int frameCount = buffer.getInt();
+                for (int j = 0; j < frameCount; j++) {
+                    frames.add(new TmxParser.Frame(buffer.getInt(), buffer.getInt()));
+                }
+                animations.put(gid, new TmxParser.Animation(frames));
+            }
+
+            List<TmxParser.Layer> layers = new ArrayList<>();
+            int layerCount = buffer.getInt();
+            for (int i = 0; i < layerCount; i++) {
+                String name = readString(buffer);
+                int layerWidth = buffer.getInt();
+                int layerHeight = buffer.getInt();
+                long[] animatedCells = new long[buffer.getInt()];
+                buffer.position((buffer.position() + 3) & ~3);
+                for (int cell = 0; cell < animatedCells.length; cell++) {
+                    animatedCells[cell] = buffer.getInt();
+                }
+
+                // Tiles stay in the mapped file
+                int tileBytes = layerWidth * layerHeight * 4;
+                IntBuffer tiles = buffer.slice(buffer.position(), tileBytes).asIntBuffer();
+                buffer.position(buffer.position() + tileBytes);
+                layers.add(new TmxParser.MappedLayer(name, layerWidth, layerHeight, tiles, animatedCells));
+            }
+
+            List<TmxParser.ObjectLayer> objectLayers = new ArrayList<>();
+            int objectLayerCount = buffer.getInt();
+            for (int i = 0; i < objectLayerCount; i++) {
+                TmxParser.ObjectLayer objectLayer = new TmxParser.ObjectLayer(readString(buffer));
+                int objectCount = buffer.getInt();
+                for (int j = 0; j < objectCount; j++) {
+                    objectLayer.addObject(readObject(buffer));
+                }
+                objectLayers.add(objectLayer);
+            }
+
+            // Everything was read, hand it over
+            target.setMapSize(width, height, tileWidth, tileHeight);
+            sourceFiles.forEach(target::addSourceFile);
+            for (TmxParser.Tileset tileset : tilesets) {
+                // Animations are stored with the map, so the definition needs none
+                target.placeTileset(new TmxParser.TilesetDefinition(tileset.imageSource, tileset.tileWidth, tileset.tileHeight,
+                        tileset.tileCount, tileset.columns, Collections.emptyMap()), tileset.firstGid);
+            }
+            animations.forEach(target::addAnimation);
+            layers.forEach(target::addLayer);
+            objectLayers.forEach(target::addObjectLayer);
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("Ignoring unreadable compiled map " + file + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks the header of a compiled copy with plain reads, so that stale copies are never
+     * mapped: a mapping keeps the file open until it is garbage collected, which stops it
+     * from being replaced on Windows.
+     *
+     * @param sourceFiles Receives the files the copy was compiled from.
+     * @return The length of the header in bytes, or -1 if the copy is stale, belongs to
+     *         another map or can't be read.
+     */
+    private static int readHeader(File file, String tmxPath, List<String> sourceFiles) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return -1;
+            }
+            int headerBytes = 12;
+            int sourceCount = in.readInt();
+            for (int i = 0; i < sourceCount; i++) {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                String path = new String(bytes, StandardCharsets.UTF_8);
+                File source = new File(path);
+                if (i == 0 && !path.equals(new File(tmxPath).getAbsolutePath())) {
+                    return -1;  // Another map with the same name hash
+                }
+                if (!source.isFile() || source.lastModified() != in.readLong() || source.length() != in.readLong()) {
+                    return -1;  // Stale
+                }
+                sourceFiles.add(path);
+                headerBytes += 4 + bytes.length + 16;
+            }
+            return headerBytes;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable compiled map " + file + ": " + e);
+            return -1;
+        }
+    }
+
+    private static TmxParser.MapObject readObject(ByteBuffer buffer) {
+        int id = buffer.getInt();
+        int gid = buffer.getInt();
+        String name = readString(buffer);
+        float x = buffer.getFloat();
+        float y = buffer.getFloat();
+        float width = buffer.getFloat();
+        float height = buffer.getFloat();
+        float rotation = buffer.getFloat();
+
+        float[] polygon = null;
+        int pointCount = buffer.getInt();
+        if (pointCount >= 0) {
+            polygon = new float[pointCount * 2];
+            for (int i = 0; i < polygon.length; i++) {
+                polygon[i] = buffer.getFloat();
+            }
+        }
+
+        Map<String, String> properties = new HashMap<>();
+        int propertyCount = buffer.getInt();
+        for (int i = 0; i < propertyCount; i++) {
+            properties.put(readString(buffer), readString(buffer));
+        }
+
+        TmxParser.MapObject mapObject = new TmxParser.MapObject(id, gid, name, x, y, width, height, properties);
+        mapObject.y = y;  // Stored as loaded, the constructor's offset is already applied
+        mapObject.rotation = rotation;
+        mapObject.polygon = polygon;
+        return mapObject;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the compiled copy of a parsed map into the cache directory. The file is written
+     * under a temporary name and then moved into place, so readers never see half of it.
+     *
+     * @param parser  A map parsed from XML.
+     * @param tmxPath The path of the .tmx file.
+     */
+    public static void write(TmxParser parser, String tmxPath) {
+        File file = compiledFile(tmxPath);
+        File temporary = new File(file.getPath() + ".tmp");
+        try {
+            Files.createDirectories(CACHE_DIR.toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                writeMap(out, parser);
+            }
+            try {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write compiled map " + file + ": " + e);
+            temporary.delete();
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, TmxParser parser) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(parser.getSourceFiles().size());
+        for (String path : parser.getSourceFiles()) {
+            File source = new File(path).getAbsoluteFile();
+            writeString(out, source.getPath());
+            out.writeLong(source.lastModified());
+            out.writeLong(source.length());
+        }
+
+        out.writeInt(parser.getMapWidth());
+        out.writeInt(parser.getMapHeight());
+        out.writeInt(parser.getTileWidth());
+        out.writeInt(parser.getTileHeight());
+
+        out.writeInt(parser.getTilesets().size());
+        for (TmxParser.Tileset tileset : parser.getTilesets()) {
+            out.writeInt(tileset.firstGid);
+            writeString(out, tileset.imageSource);
+            out.writeInt(tileset.tileWidth);
+            out.writeInt(tileset.tileHeight);
+            out.writeInt(tileset.tileCount);
+            out.writeInt(tileset.columns);
+        }
+
+        out.writeInt(parser.getAnimations().size());
+        for (Map.Entry<Integer, TmxParser.Animation> entry : parser.getAnimations().entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInt(entry.getValue().frames.size());
+            for (TmxParser.Frame frame : entry.getValue().frames) {
+                out.writeInt(frame.tileId);
+                out.writeInt(frame.duration);
+            }
+        }
+
+        out.writeInt(parser.getLayers().size());
+        for (TmxParser.Layer layer : parser.getLayers()) {
+            writeString(out, layer.name);
+            out.writeInt(layer.width);
+            out.writeInt(layer.height);
+            out.writeInt(layer.animatedCells.length);
+            while (out.size() % 4 != 0) {
+                out.writeByte(0);  // Align the int arrays so they can be viewed in place
+            }
+            for (long cell : layer.animatedCells) {
+                out.writeInt((int) cell);  // Compiled maps are finite, so their cells fit in an int
+            }
+            for (int y = 0; y < layer.height; y++) {
+                for (int x = 0; x < layer.width; x++) {
+                    out.writeInt(layer.getTile(x, y));
+                }
+            }
+        }
+
+        out.writeInt(parser.getObjectLayers().size());
+        for (TmxParser.ObjectLayer objectLayer : parser.getObjectLayers()) {
+            writeString(out, objectLayer.name);
+            out.writeInt(objectLayer.getObjects().size());
+            for (TmxParser.MapObject mapObject : objectLayer.getObjects()) {
+                writeObject(out, mapObject);
+            }
+        }
+    }
+
+    private static void writeObject(DataOutputStream out, TmxParser.MapObject mapObject) throws IOException {
+        out.writeInt(mapObject.id);
+        out.writeInt(mapObject.gid);
+        writeString(out, mapObject.name);
+        out.writeFloat(mapObject.x);
+        out.writeFloat(mapObject.y);
+        out.writeFloat(mapObject.width);
+        out.writeFloat(mapObject.height);
+        out.writeFloat(mapObject.rotation);
+
+        if (mapObject.polygon == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(mapObject.polygon.length / 2);
+            for (float coordinate : mapObject.polygon) {
+                out.writeFloat(coordinate);
+            }
+        }
+
+        out.writeInt(mapObject.properties.size());
+        for (Map.Entry<String, String> property : mapObject.properties.entrySet()) {
+            writeString(out, property.getKey());
+            writeString(out, property.getValue());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Compile maps ahead of time and compare how long they take to load from XML and compiled
+    public static void main(String[] args) {
+        List<String> maps = new ArrayList<>(List.of(args));
+        if (maps.isEmpty()) {
+            File[] files = new File("resources/assets").listFiles((dir, name) -> name.endsWith(".tmx"));
+            if (files != null) {
+                for (File file : files) {
+                    maps.add(file.getPath());
+                }
+            }
+        }
+
+        System.out.printf("%-36s %10s %10s %10s%n", "map", "bytes", "xml (ms)", "tmxb (ms)");
+        for (String map : maps) {
+            TmxParser parsed = new TmxParser(map, false);
+            if (parsed.isInfinite()) {
+                System.out.println(map + ": infinite maps are streamed, not compiled");
+                continue;
+            }
+            write(parsed, map);
+            parsed.dispose();
+
+            double xmlTime = medianLoadMillis(() -> new TmxParser(map, false).dispose());
+            double compiledTime = medianLoadMillis(() -> new TmxParser(map).dispose());
+            System.out.printf("%-36s %10d %10.2f %10.2f%n", map, compiledFile(map).length(), xmlTime, compiledTime);
+        }
+    }
+
+    // Median wall time of a full load (including tileset images), after a few warm-up loads
+    private static double medianLoadMillis(Runnable load) {
+        for (int i = 0; i < 5; i++) {
+            load.run();
+        }
+        long[] times = new long[15];
+        for (int i = 0; i < times.length; i++) {
+            long start = System.nanoTime();
+            load.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[times.length / 2] / 1_000_000.0;
+    }
+}
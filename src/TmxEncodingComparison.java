@@ -0,0 +1,123 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compares map load times across Tiled's layer encodings. The map is re-saved as CSV,
+ * base64, base64+zlib and base64+gzip into temporary files, then each copy is loaded a
+ * number of times with both parsers.
+ *
+ * Usage: java TmxEncodingComparison [map.tmx] [runs]
+ */
+public class TmxEncodingComparison {
+    private static final Pattern DATA_ELEMENT = Pattern.compile("<data[^>]*>.*?</data>", Pattern.DOTALL);
+    private static final String[][] ENCODINGS = {
+            {"csv", null},
+            {"base64", null},
+            {"base64", "zlib"},
+            {"base64", "gzip"},
+    };
+
+    public static void main(String[] args) throws IOException {
+        String mapPath = args.length > 0 ? args[0] : "resources/assets/large_test.tmx";
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        String source = new String(Files.readAllBytes(new File(mapPath).toPath()), StandardCharsets.UTF_8);
+        List<TmxParser.Layer> layers = new TmxParser(mapPath, false).getLayers();
+
+        System.out.printf("%-12s %10s %12s %12s%n", "encoding", "bytes", "stax (ms)", "dom (ms)");
+        for (String[] encoding : ENCODINGS) {
+            File file = File.createTempFile("encoding-", ".tmx");
+            file.deleteOnExit();
+            Files.write(file.toPath(), reencode(source, layers, encoding[0], encoding[1]).getBytes(StandardCharsets.UTF_8));
+
+            String label = encoding[1] == null ? encoding[0] : encoding[0] + "+" + encoding[1];
+            if (!sameTiles(layers, new TmxParser(file.getPath(), false).getLayers())
+                    || !sameTiles(layers, new TmxParser(file.getPath(), true).getLayers())) {
+                System.err.println(label + ": decoded tiles differ from the original map");
+            }
+            System.out.printf("%-12s %10d %12.2f %12.2f%n", label, file.length(),
+                    medianLoadMillis(file.getPath(), false, runs), medianLoadMillis(file.getPath(), true, runs));
+        }
+    }
+
+    // Replace every <data> element, in layer order, with the layer's tiles in the given encoding
+    private static String reencode(String source, List<TmxParser.Layer> layers, String encoding, String compression) throws IOException {
+        Matcher matcher = DATA_ELEMENT.matcher(source);
+        StringBuilder result = new StringBuilder();
+        int layerIndex = 0;
+        while (matcher.find()) {
+            int[] tiles = layers.get(layerIndex++).tiles;
+            String attributes = "encoding=\"" + encoding + "\"" + (compression != null ? " compression=\"" + compression + "\"" : "");
+            String data = encoding.equals("csv") ? toCsv(tiles) : toBase64(tiles, compression);
+            matcher.appendReplacement(result, Matcher.quoteReplacement("<data " + attributes + ">\n" + data + "\n</data>"));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private static String toCsv(int[] tiles) {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < tiles.length; i++) {
+            if (i > 0) {
+                csv.append(',');
+            }
+            csv.append(Integer.toUnsignedString(tiles[i]));
+        }
+        return csv.toString();
+    }
+
+    private static String toBase64(int[] tiles, String compression) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(tiles.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asIntBuffer().put(tiles);
+        byte[] raw = bytes.array();
+        if (compression == null) {
+            return Base64.getEncoder().encodeToString(raw);
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = compression.equals("gzip") ? new GZIPOutputStream(compressed) : new DeflaterOutputStream(compressed)) {
+            out.write(raw);
+        }
+        return Base64.getEncoder().encodeToString(compressed.toByteArray());
+    }
+
+    private static boolean sameTiles(List<TmxParser.Layer> expected, List<TmxParser.Layer> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!Arrays.equals(expected.get(i).tiles, actual.get(i).tiles)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Median wall time of a full load (including tileset images), after a few warm-up loads
+    private static double medianLoadMillis(String path, boolean useDomParser, int runs) {
+        for (int i = 0; i < 5; i++) {
+            new TmxParser(path, useDomParser).dispose();
+        }
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            new TmxParser(path, useDomParser).dispose();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[runs / 2] / 1_000_000.0;
+    }
+}
@@ -1,59 +1,331 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.util.List;
 
 public class TmxMapExample extends JPanel {
+    // Rendering mode, set with -Dgame.activeRendering=true -Dgame.targetFps=144 -Dgame.tickRate=60
+    private static final boolean ACTIVE_RENDERING = Boolean.getBoolean("game.activeRendering");
+    private static final int TARGET_FPS = Integer.getInteger("game.targetFps", 60);
+    private static final int TICK_RATE = Integer.getInteger("game.tickRate", 60);
+    // Memory for the loaded chunks of infinite maps, set with -Dgame.chunkBudgetMB=32
+    private static final long CHUNK_BUDGET_BYTES = Integer.getInteger("game.chunkBudgetMB", 32) * 1024L * 1024;
+
+    private static final Rectangle HUD_BOUNDS = new Rectangle(0, 0, 200, 48);  // Health and XP text, in screen pixels
+
+    // Sprite of the player, warm it up with ImageUtils before the game starts to skip the disk
+    public static final String PLAYER_SPRITE = "resources/assets/rabbit.png";
+
     private TmxParser parser;
     private TmxRenderer renderer;
     private Character character;
     private InputHandler inputHandler;
     private Camera camera;
+    private ChunkStreamer chunkStreamer;  // Only for infinite maps
+    private final FrameStats frameStats = new FrameStats();  // Performance overlay, toggled with F3
     private List<Question> questions;  // Questions for the fight
 
+    private final Object gameLock = new Object();  // Guards game state shared by the loop thread and the EDT
+    private ActiveRenderCanvas canvas;
+    private GameLoop gameLoop;
+    private Timer gameTimer;  // Swing fallback
+    private long timerPreviousTime, timerLag;  // Swing fallback: time of the last tick and time not simulated yet, in nanoseconds
+    private boolean stopped;  // Torn down, the map is disposed; guarded by gameLock
+
+    // What changed on screen since the last frame, so idle frames can be skipped
+    private DamageTracker damage;
+    private int shownHealth, shownXP;  // HUD values of the last frame
+    private boolean statsShown;  // The performance overlay was on in the last frame
+    private boolean changing;  // The last step changed something, so frames between steps differ
+    private boolean frameNeeded = true;  // Something changed since the last frame the canvas drew
+
     public TmxMapExample(String tmxFilePath, List<Question> questions) {  // Accept questions
+        this(new TmxParser(tmxFilePath), questions);
+    }
+
+    // Start on a map that was loaded ahead of time, e.g. with TmxParser.loadAsync
+    public TmxMapExample(TmxParser parser, List<Question> questions) {
         this.questions = questions;
-        initializeGame(tmxFilePath);
-        startGameLoop();
+        initializeGame(parser);
+        if (ACTIVE_RENDERING) {
+            startActiveRendering();
+        } else {
+            startGameLoop();
+        }
         setUpInputHandler();  // Use InputHandler for key management
     }
 
-    private void initializeGame(String tmxFilePath) {
-        parser = new TmxParser(tmxFilePath);
+    private void initializeGame(TmxParser parser) {
+        this.parser = parser;
         renderer = new TmxRenderer(parser);
 
         // Initialize the character
-        character = new Character("resources/assets/rabbit.png", 50, 50, 32, 32);
+        character = new Character(PLAYER_SPRITE, 50, 50, 32, 32);
 
         // Initialize the camera with the screen size and zoom level
         camera = new Camera(800, 600, 2.0f);  // 800x600 viewport, 2x zoom
 
+        // Redraw where objects were picked up or defeated
+        damage = new DamageTracker(camera);
+        damage.addAll();
+        ObjectStore objects = parser.getObjectStore();
+        objects.setRemovalListener(handle ->
+                damage.addMapRegion(objects.getX(handle), objects.getY(handle), objects.getWidth(handle), objects.getHeight(handle)));
+
+        // Infinite maps keep only the chunks around the camera in memory
+        if (parser.isInfinite()) {
+            chunkStreamer = new ChunkStreamer(parser, CHUNK_BUDGET_BYTES);
+            chunkStreamer.setListener((layerIndex, x, y, width, height) -> {
+                renderer.invalidateRegion(layerIndex, x, y, width, height);
+                damage.addMapRegion(x * parser.getTileWidth(), y * parser.getTileHeight(),
+                        width * parser.getTileWidth(), height * parser.getTileHeight());
+            });
+            camera.update(character, parser.getMapWidth() * parser.getTileWidth(), parser.getMapHeight() * parser.getTileHeight());
+            chunkStreamer.loadVisible(camera.getVisibleBounds());
+        }
+
         // Initialize input handler
-        inputHandler = new InputHandler(character, parser, (JFrame) SwingUtilities.getWindowAncestor(this), questions);
+        inputHandler = new InputHandler(character, parser, (JFrame) SwingUtilities.getWindowAncestor(this), questions, gameLock);
+
+        // Time the frame phases for the performance overlay
+        renderer.setFrameStats(frameStats);
+        inputHandler.setFrameStats(frameStats);
+        ChunkCache chunkCache = renderer.getChunkCache();
+        frameStats.addCache("Chunks", chunkCache::getHits, chunkCache::getMisses);
+        SpriteCache sprites = ImageUtils.getSpriteCache();
+        frameStats.addCache("Sprites", sprites::getHits, sprites::getMisses);
+        TilesetRegistry tilesets = TilesetRegistry.getDefault();
+        frameStats.addCache("Tilesets", tilesets::getHits, tilesets::getMisses);
     }
 
+    // Swing fallback: step the game on the EDT at the tick rate and let the repaint manager draw
+    // the damaged part of the panel, if any. Timer events come late or get coalesced, so each one
+    // runs as many fixed steps as the time since the last one covers, like GameLoop.run
     private void startGameLoop() {
-        Timer gameTimer = new Timer(100, e -> repaint());
+        long tickNanos = 1_000_000_000L / TICK_RATE;
+        timerPreviousTime = System.nanoTime();
+        timerLag = 0;
+        gameTimer = new Timer(Math.max(1, 1000 / TICK_RATE), e -> {
+            if (stopped) {
+                return;  // An event queued before the timer stopped
+            }
+            long now = System.nanoTime();
+            timerLag += now - timerPreviousTime;
+            timerPreviousTime = now;
+            int updates = 0;
+            while (timerLag >= tickNanos && updates < GameLoop.MAX_UPDATES_PER_FRAME) {
+                updateGame(1f / TICK_RATE);
+                timerLag -= tickNanos;
+                updates++;
+            }
+            if (updates == GameLoop.MAX_UPDATES_PER_FRAME) {
+                timerLag = 0;  // Too far behind, e.g. after a modal dialog; skip ahead
+            }
+            if (damage.isFull()) {
+                repaint();
+            } else if (!damage.isEmpty()) {
+                repaint(damage.getBounds());
+            }
+            damage.clear();
+        });
         gameTimer.start();
     }
 
+    // Active rendering: draw on a Canvas from a dedicated thread with fixed-timestep updates
+    private void startActiveRendering() {
+        setLayout(new BorderLayout());
+        canvas = new ActiveRenderCanvas((g, width, height, alpha) -> {
+            synchronized (gameLock) {
+                if (stopped) {
+                    return;
+                }
+                camera.setViewportSize(width, height);
+                camera.interpolate(alpha);
+                renderFrame(g, alpha, width);
+            }
+        });
+        add(canvas, BorderLayout.CENTER);
+
+        // The canvas ignores repaint requests, so redraw after resizing or showing it again
+        canvas.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                redrawAll();
+            }
+
+            @Override
+            public void componentShown(ComponentEvent e) {
+                redrawAll();
+            }
+        });
+
+        gameLoop = new GameLoop(new GameLoop.Callbacks() {
+            @Override
+            public void update() {
+                synchronized (gameLock) {
+                    if (stopped) {
+                        return;  // GameLoop.stop() doesn't wait for the loop thread
+                    }
+                    updateGame(1f / TICK_RATE);
+                    // The back buffer is redrawn whole, so any damage means a new frame
+                    changing = !damage.isEmpty();
+                    frameNeeded |= changing;
+                    damage.clear();
+                }
+            }
+
+            @Override
+            public boolean render(float alpha) {
+                synchronized (gameLock) {
+                    if (stopped || !frameNeeded) {
+                        return false;
+                    }
+                    frameNeeded = changing;  // Keep drawing in between steps while things move, then once more at rest
+                }
+                canvas.renderFrame(alpha);
+                return true;
+            }
+        }, TICK_RATE, TARGET_FPS);
+    }
+
     private void setUpInputHandler() {
-        setFocusable(true);
-        addKeyListener(inputHandler);  // Add the input handler as a key listener
+        if (canvas != null) {
+            // Key events arrive on the EDT while the loop thread renders, so handle them under the game lock
+            canvas.setFocusable(true);
+            canvas.addKeyListener(new KeyAdapter() {
+                @Override
+                public void keyPressed(KeyEvent e) {
+                    synchronized (gameLock) {
+                        inputHandler.keyPressed(e);
+                    }
+                }
+
+                @Override
+                public void keyReleased(KeyEvent e) {
+                    synchronized (gameLock) {
+                        inputHandler.keyReleased(e);
+                    }
+                }
+            });
+            canvas.addFocusListener(new FocusAdapter() {
+                @Override
+                public void focusLost(FocusEvent e) {
+                    synchronized (gameLock) {
+                        inputHandler.focusLost(e);
+                    }
+                }
+            });
+        } else {
+            setFocusable(true);
+            addKeyListener(inputHandler);  // Add the input handler as a key listener
+            addFocusListener(inputHandler);
+        }
+    }
+
+    private void redrawAll() {
+        synchronized (gameLock) {
+            damage.addAll();
+        }
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (gameLoop != null) {
+            gameLoop.start();
+            canvas.requestFocusInWindow();
+        }
+    }
+
+    // The game is torn down with its window: stop it and give the map's tilesets and temporary
+    // files back. The panel can't be shown again afterwards.
+    @Override
+    public void removeNotify() {
+        if (gameLoop != null) {
+            gameLoop.stop();
+        }
+        if (gameTimer != null) {
+            gameTimer.stop();
+        }
+        // The loop thread may still be waiting for the lock; once it gets it, it sees stopped and leaves the map alone
+        synchronized (gameLock) {
+            stopped = true;
+            if (chunkStreamer != null) {
+                chunkStreamer.shutdown();
+            }
+            parser.dispose();
+        }
+        super.removeNotify();
+    }
+
+    // Advance the simulation by one step, moving the character by the keys held
+    private void updateGame(float seconds) {
+        character.savePosition();
+        inputHandler.update(seconds);
+        camera.update(character, parser.getMapWidth() * parser.getTileWidth(), parser.getMapHeight() * parser.getTileHeight());
+        if (chunkStreamer != null) {
+            chunkStreamer.update(camera.getVisibleBounds());
+        }
+        addDamage();
+    }
+
+    // Record what the last step changed on screen: everything if the camera moved, otherwise the
+    // character's old and new place, animation frames that advanced and the HUD. Removed objects
+    // and streamed chunks are recorded as they happen.
+    private void addDamage() {
+        if (camera.hasMoved() || frameStats.isEnabled() || statsShown) {
+            damage.addAll();  // The overlay changes every frame, and leaves a mark when turned off
+        }
+        statsShown = frameStats.isEnabled();
+        if (character.hasMoved()) {
+            damage.addMapRegion(character.getPreviousX(), character.getPreviousY(), character.getWidth(), character.getHeight());
+            damage.addMapRegion(character.getX(), character.getY(), character.getWidth(), character.getHeight());
+        }
+        renderer.addAnimationDamage(camera.getVisibleBounds(), damage);
+        if (character.getHealth() != shownHealth || character.getXP() != shownXP) {
+            damage.add(HUD_BOUNDS.x, HUD_BOUNDS.y, HUD_BOUNDS.width, HUD_BOUNDS.height);
+            shownHealth = character.getHealth();
+            shownXP = character.getXP();
+        }
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        Graphics2D g2d = (Graphics2D) g;
+        if (canvas != null) {
+            return;  // The canvas draws itself from the game loop
+        }
 
-        camera.update(character, parser.getMapWidth() * parser.getTileWidth(), parser.getMapHeight() * parser.getTileHeight());
+        if (getWidth() > 0 && getHeight() > 0) {
+            camera.setViewportSize(getWidth(), getHeight());
+            camera.update(character, parser.getMapWidth() * parser.getTileWidth(), parser.getMapHeight() * parser.getTileHeight());
+        }
+        renderFrame((Graphics2D) g, 1f, getWidth());
+    }
+
+    // Draw the map, the character, the HUD and, if enabled, the performance overlay
+    private void renderFrame(Graphics2D g, float alpha, int screenWidth) {
+        frameStats.beginFrame();
+        Graphics2D g2d = (Graphics2D) g.create();
         camera.applyTransform(g2d);
+        renderer.render(g2d, camera.getVisibleBounds());  // Times the tile and object layers
 
-        renderer.render(g2d);
-        character.draw(g2d);
+        long start = frameStats.start();
+        character.draw(g2d, alpha);
+        g2d.dispose();
+        start = frameStats.stop(FrameStats.CHARACTER, start);
 
         drawHealth(g);
         drawXP(g);
+        frameStats.stop(FrameStats.HUD, start);
+        frameStats.endFrame();
+
+        frameStats.draw(g, screenWidth);
     }
 
     private void drawHealth(Graphics g) {
@@ -1,138 +1,569 @@
 import org.w3c.dom.*;
 import javax.xml.parsers.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TmxParser {
+    // The DOM parser is kept as a fallback, select it with -Dtmx.parser=dom
+    private static final boolean USE_DOM_PARSER = "dom".equals(System.getProperty("tmx.parser"));
+    // Compiled .tmxb copies of maps are used and written unless disabled with -Dtmx.compiledMaps=false
+    private static final boolean USE_COMPILED_MAPS = !"false".equals(System.getProperty("tmx.compiledMaps"));
+    private static final long MAX_COLLISION_CELLS = 1L << 27;  // Keeps the collision mask within 16 MB on huge maps
+
     private int width, height, tileWidth, tileHeight;
     private List<Tileset> tilesets = new ArrayList<>();
     private List<Layer> layers = new ArrayList<>();
     private List<ObjectLayer> objectLayers = new ArrayList<>();
     private Map<Integer, Animation> animations = new HashMap<>();  // Map to store tile GIDs with animations
+    private GidTable gidTable;  // GID -> tileset, local id and tile image
+    private ObjectStore objectStore;  // Compiled objects with a spatial index, updated as objects are removed
+    private CollisionMask collisionMask;  // Walls rasterized into a sub-tile grid
+
+    // Infinite maps: chunk tiles are spilled to a region file, and the map is shifted so its
+    // chunks' bounding box starts at (0, 0)
+    private boolean infinite;
+    private ChunkRegionFile chunkRegionFile;
+    private int chunkMinX = Integer.MAX_VALUE, chunkMinY = Integer.MAX_VALUE;
+    private int chunkMaxX = Integer.MIN_VALUE, chunkMaxY = Integer.MIN_VALUE;
+    private int originX, originY;  // Tiled tile coordinates of the map's (0, 0)
+
+    private String path;  // The .tmx file
+    private List<String> sourceFiles = new ArrayList<>();  // The .tmx and .tsx files the map was read from
+    private TilesetRegistry.Lease tilesetLease = TilesetRegistry.getDefault().newLease();  // Shared tilesets and images in use
+    private List<TilesetLoad> tilesetLoads = new ArrayList<>();  // Tilesets still loading on the asset loader threads
+    private List<BufferedImage> tilesetImages = new ArrayList<>();  // Image of each tileset, null if it failed
+    private List<AssetLoadException> loadErrors = new ArrayList<>();
+    private LoadListener loadListener = (phase, done, total) -> { };
+    private GameEvents.MapLoadPhase phaseEvent;  // The load phase being recorded, if any
+
+    // Told how far a map load got, e.g. to drive a progress bar. Called from the loading
+    // thread or from the asset loader threads, one call at a time.
+    public interface LoadListener {
+        void progress(String phase, int done, int total);
+    }
+
+    // A tileset of the map whose .tsx file and image load in the background while the map is read
+    private static class TilesetLoad {
+        final int firstGid;
+        final CompletableFuture<TilesetDefinition> definition;
+        final CompletableFuture<BufferedImage> image;
 
+        TilesetLoad(int firstGid, CompletableFuture<TilesetDefinition> definition, CompletableFuture<BufferedImage> image) {
+            this.firstGid = firstGid;
+            this.definition = definition;
+            this.image = image;
+        }
+    }
+
+    /**
+     * Loads a map on the asset loader threads, e.g. so the UI stays responsive. Its tilesets
+     * load in parallel either way.
+     *
+     * @param filePath The path of the .tmx file.
+     * @return A future that completes once the map and all of its assets are loaded. Assets
+     * that failed are listed by getLoadErrors() of the map.
+     */
+    public static CompletableFuture<TmxParser> loadAsync(String filePath) {
+        return loadAsync(filePath, null);
+    }
+
+    /**
+     * Loads a map on the asset loader threads, reporting its progress.
+     *
+     * @param filePath     The path of the .tmx file.
+     * @param loadListener Told about each load phase, or null.
+     * @return A future that completes once the map and all of its assets are loaded.
+     */
+    public static CompletableFuture<TmxParser> loadAsync(String filePath, LoadListener loadListener) {
+        return CompletableFuture.supplyAsync(() -> new TmxParser(filePath, loadListener), AssetLoader.getExecutor());
+    }
+
+    // Load a map from its compiled copy if that is up to date, otherwise parse the XML and compile it for next time
     public TmxParser(String filePath) {
-        parse(filePath);
+        this(filePath, null);
+    }
+
+    // Load a map, reporting its progress to loadListener (may be null)
+    public TmxParser(String filePath, LoadListener loadListener) {
+        this.path = filePath;
+        if (loadListener != null) {
+            this.loadListener = loadListener;
+        }
+        GameEvents.MapLoad event = new GameEvents.MapLoad();
+        event.begin();
+        this.loadListener.progress("Reading map", 0, 1);
+        beginPhase("Reading map");
+
+        String source;
+        if (USE_COMPILED_MAPS && TmxBinaryFormat.read(this, filePath)) {
+            source = "compiled";
+            finishLoading();
+        } else {
+            source = USE_DOM_PARSER ? "dom" : "xml";
+            boolean parsed = parse(filePath, USE_DOM_PARSER);
+            if (USE_COMPILED_MAPS && parsed && !infinite) {
+                beginPhase("Writing compiled map");
+                TmxBinaryFormat.write(this, filePath);
+                endPhase();
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.map = filePath;
+            event.source = source;
+            event.width = width;
+            event.height = height;
+            event.tilesets = tilesets.size();
+            event.layers = layers.size();
+            event.objects = objectStore.size();
+            event.errors = loadErrors.size();
+            event.commit();
+        }
     }
 
-    private void parse(String filePath) {
+    // Parse the XML with the DOM parser or the streaming one, e.g. to compare their results
+    TmxParser(String filePath, boolean useDomParser) {
+        this.path = filePath;
+        parse(filePath, useDomParser);
+    }
+
+    // Returns whether the map and all of its tilesets were read without errors
+    private boolean parse(String filePath, boolean useDomParser) {
+        boolean parsed = false;
+        sourceFiles.add(filePath);
         try {
-            File file = new File(filePath);
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(file);
-
-            Element root = document.getDocumentElement();
-            this.width = Integer.parseInt(root.getAttribute("width"));
-            this.height = Integer.parseInt(root.getAttribute("height"));
-            this.tileWidth = Integer.parseInt(root.getAttribute("tilewidth"));
-            this.tileHeight = Integer.parseInt(root.getAttribute("tileheight"));
-
-            // Parse tilesets and referenced .tsx files
-            NodeList tilesetNodes = root.getElementsByTagName("tileset");
-            for (int i = 0; i < tilesetNodes.getLength(); i++) {
-                Element tilesetElement = (Element) tilesetNodes.item(i);
-                int firstGid = Integer.parseInt(tilesetElement.getAttribute("firstgid"));
-                String tsxSource = tilesetElement.getAttribute("source");
-                tsxSource = "resources/assets/" + tsxSource;
-                Tileset tileset = parseTileset(tsxSource, firstGid);
-                tilesets.add(tileset);
+            if (useDomParser) {
+                parseDom(filePath);
+            } else {
+                TmxStreamReader.read(this, filePath);
             }
+            parsed = true;
+        } catch (Exception e) {
+            reportLoadError(new AssetLoadException(filePath, e));
+        }
+        finishLoading();
+        return parsed && !tilesets.contains(null);
+    }
 
-            // Parse tile layers
-            NodeList layerNodes = root.getElementsByTagName("layer");
-            for (int i = 0; i < layerNodes.getLength(); i++) {
-                Element layerElement = (Element) layerNodes.item(i);
-                Layer layer = new Layer(
-                        layerElement.getAttribute("name"),
-                        Integer.parseInt(layerElement.getAttribute("width")),
-                        Integer.parseInt(layerElement.getAttribute("height")),
-                        layerElement.getElementsByTagName("data").item(0).getTextContent().trim()
-                );
-                layers.add(layer);
+    // Build the lookup structures shared by both parsers
+    private void finishLoading() {
+        beginPhase("Loading tilesets");
+        awaitTilesets();
+
+        // Resolve every GID once, now that all tilesets are known
+        loadListener.progress("Packing tiles", 0, 1);
+        beginPhase("Packing tiles");
+        gidTable = new GidTable(tilesets, tilesetImages, animations);
+        if (gidTable.getAtlas() != null) {
+            // The atlas has copies of the tileset images, so don't keep the registry's decoded ones in use too
+            tilesetImages.clear();
+            tilesetLease.releaseImages();
+        }
+
+        if (infinite) {
+            normalizeInfiniteMap();
+        }
+        for (Layer layer : layers) {
+            if (layer instanceof ChunkedLayer) {
+                ((ChunkedLayer) layer).gidTable = gidTable;  // Chunks index their animated cells as they load
+            } else if (!(layer instanceof MappedLayer)) {
+                layer.animatedCells = findAnimatedCells(layer.tiles);  // Compiled maps store their index
             }
+        }
 
-            // Parse object layers
-            NodeList objectLayerNodes = root.getElementsByTagName("objectgroup");
-            for (int i = 0; i < objectLayerNodes.getLength(); i++) {
-                Element objectLayerElement = (Element) objectLayerNodes.item(i);
-                ObjectLayer objectLayer = new ObjectLayer(objectLayerElement.getAttribute("name"));
-
-                NodeList objectNodes = objectLayerElement.getElementsByTagName("object");
-                for (int j = 0; j < objectNodes.getLength(); j++) {
-                    Element objectElement = (Element) objectNodes.item(j);
-
-                    int id = Integer.parseInt(objectElement.getAttribute("id"));
-                    int gid = objectElement.hasAttribute("gid") ? Integer.parseInt(objectElement.getAttribute("gid")) : 0;
-                    String name = objectElement.hasAttribute("name") ? objectElement.getAttribute("name") : "Unnamed";
-                    float x = Float.parseFloat(objectElement.getAttribute("x"));
-                    float y = Float.parseFloat(objectElement.getAttribute("y"));
-                    float width = objectElement.hasAttribute("width") ? Float.parseFloat(objectElement.getAttribute("width")) : 0;
-                    float height = objectElement.hasAttribute("height") ? Float.parseFloat(objectElement.getAttribute("height")) : 0;
-
-                    // Get properties for each object
-                    Map<String, String> properties = getObjectProperties(objectElement);
-
-                    // Add object to the object layer
-                    MapObject mapObject = new MapObject(id, gid, name, x, y, width, height, properties);
-                    objectLayer.addObject(mapObject);
-                }
+        // Classify and index every object once for rendering and collision queries
+        loadListener.progress("Indexing objects", 0, 1);
+        beginPhase("Indexing objects");
+        objectStore = new ObjectStore(objectLayers);
+        collisionMask = new CollisionMask(objectStore, width * tileWidth, height * tileHeight, collisionCellSize());
+        endPhase();
+        loadListener.progress("Done", 1, 1);
+    }
+
+    // Record the phase in progress as a game.MapLoadPhase event, and start timing the next one
+    private void beginPhase(String phase) {
+        endPhase();
+        phaseEvent = new GameEvents.MapLoadPhase();
+        phaseEvent.begin();
+        phaseEvent.phase = phase;
+    }
 
-                objectLayers.add(objectLayer);
+    private void endPhase() {
+        if (phaseEvent == null) {
+            return;
+        }
+        phaseEvent.end();
+        if (phaseEvent.shouldCommit()) {
+            phaseEvent.map = path;
+            phaseEvent.commit();
+        }
+        phaseEvent = null;
+    }
+
+    // Size the map to the bounding box of its chunks, and move objects into the same coordinates.
+    // Positions are int map pixels throughout the game, so maps larger than that are rejected.
+    private void normalizeInfiniteMap() {
+        long boxWidth = (long) chunkMaxX - chunkMinX;
+        long boxHeight = (long) chunkMaxY - chunkMinY;
+        if (chunkRegionFile == null) {
+            width = 0;
+            height = 0;
+        } else if (boxWidth * tileWidth > Integer.MAX_VALUE || boxHeight * tileHeight > Integer.MAX_VALUE) {
+            reportLoadError(new AssetLoadException(path, new IOException(
+                    "The chunks span " + boxWidth + "x" + boxHeight + " tiles, more than int pixel coordinates can address")));
+            width = 0;
+            height = 0;
+        } else {
+            originX = chunkMinX;
+            originY = chunkMinY;
+            width = chunkMaxX - chunkMinX;
+            height = chunkMaxY - chunkMinY;
+        }
+
+        for (Layer layer : layers) {
+            layer.width = width;
+            layer.height = height;
+            if (layer instanceof ChunkedLayer) {
+                ((ChunkedLayer) layer).regionFile = chunkRegionFile;
+                ((ChunkedLayer) layer).setOrigin(originX, originY);
+            }
+        }
+        for (ObjectLayer objectLayer : objectLayers) {
+            for (MapObject mapObject : objectLayer.getObjects()) {
+                mapObject.x -= originX * tileWidth;
+                mapObject.y -= originY * tileHeight;
             }
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    // Quarter-tile collision cells, coarser on maps too large for a mask of that resolution
+    private int collisionCellSize() {
+        int cellSize = Math.max(1, tileWidth / 4);
+        long mapWidth = (long) width * tileWidth;
+        long mapHeight = (long) height * tileHeight;
+        while (((mapWidth + cellSize - 1) / cellSize) * ((mapHeight + cellSize - 1) / cellSize) > MAX_COLLISION_CELLS) {
+            cellSize *= 2;
         }
+        return cellSize;
     }
 
-    private Tileset parseTileset(String tsxFilePath, int firstGid) {
-        Tileset tileset = null;
-        try {
-            File file = new File(tsxFilePath);
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(file);
-
-            Element root = document.getDocumentElement();
-            Element imageElement = (Element) root.getElementsByTagName("image").item(0);
-            String imageSource = imageElement.getAttribute("source");
-
-            int tileWidth = Integer.parseInt(root.getAttribute("tilewidth"));
-            int tileHeight = Integer.parseInt(root.getAttribute("tileheight"));
-            int tileCount = Integer.parseInt(root.getAttribute("tilecount"));
-            int columns = Integer.parseInt(root.getAttribute("columns"));
-
-            tileset = new Tileset(firstGid, imageSource, tileWidth, tileHeight, tileCount, columns);
-
-            // Parse animations within the tileset
-            NodeList tileNodes = root.getElementsByTagName("tile");
-            for (int i = 0; i < tileNodes.getLength(); i++) {
-                Element tileElement = (Element) tileNodes.item(i);
-                int localTileId = Integer.parseInt(tileElement.getAttribute("id"));
-
-                // Check if the tile has an animation
-                NodeList animationNodes = tileElement.getElementsByTagName("animation");
-                if (animationNodes.getLength() > 0) {
-                    List<Frame> frames = new ArrayList<>();
-                    NodeList frameNodes = ((Element) animationNodes.item(0)).getElementsByTagName("frame");
-                    for (int j = 0; j < frameNodes.getLength(); j++) {
-                        Element frameElement = (Element) frameNodes.item(j);
-                        int frameTileId = Integer.parseInt(frameElement.getAttribute("tileid"));
-                        int duration = Integer.parseInt(frameElement.getAttribute("duration"));
-                        frames.add(new Frame(frameTileId, duration));
+    // Called by TmxStreamReader while it reads a map
+    void setMapSize(int width, int height, int tileWidth, int tileHeight) {
+        this.width = width;
+        this.height = height;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    void setInfinite(boolean infinite) {
+        this.infinite = infinite;
+    }
+
+    // Spill a <chunk> of an infinite map's layer to the region file
+    void addChunk(ChunkedLayer layer, int x, int y, int chunkWidth, int chunkHeight, int[] tiles) throws IOException {
+        if (chunkRegionFile == null) {
+            chunkRegionFile = new ChunkRegionFile(chunkWidth, chunkHeight);  // Tiled writes all chunks of a map at one size
+        }
+        chunkRegionFile.writeRegion(layer.index, x, y, chunkWidth, chunkHeight, tiles);
+
+        chunkMinX = Math.min(chunkMinX, x);
+        chunkMinY = Math.min(chunkMinY, y);
+        chunkMaxX = Math.max(chunkMaxX, x + chunkWidth);
+        chunkMaxY = Math.max(chunkMaxY, y + chunkHeight);
+    }
+
+    // Remember a file the map depends on, so its compiled copy can be checked for staleness
+    void addSourceFile(String path) {
+        sourceFiles.add(path);
+    }
+
+    // Place a tileset read with the map at firstGid; its image loads in the background
+    void placeTileset(TilesetDefinition definition, int firstGid) {
+        queueTileset(CompletableFuture.completedFuture(definition), firstGid);
+    }
+
+    // Start loading a .tsx file (through the tileset registry) and its image in the background
+    void loadTileset(String tsxPath, int firstGid, TilesetRegistry.Loader<TilesetDefinition> loader) {
+        addSourceFile(tsxPath);
+        queueTileset(loadAsset(tsxPath, "tileset", () -> tilesetLease.tileset(tsxPath, loader)), firstGid);
+    }
+
+    private void queueTileset(CompletableFuture<TilesetDefinition> definition, int firstGid) {
+        CompletableFuture<BufferedImage> image = definition.thenCompose(loaded -> {
+            String imagePath = "resources/assets/" + loaded.imageSource;
+            return loadAsset(imagePath, "image", () -> tilesetLease.image(imagePath));
+        });
+        tilesetLoads.add(new TilesetLoad(firstGid, definition, image));
+    }
+
+    // Load an asset on the asset loader threads, recording it as a game.TilesetLoad event
+    private <T> CompletableFuture<T> loadAsset(String assetPath, String kind, AssetLoader.Task<T> task) {
+        return AssetLoader.load(assetPath, () -> {
+            GameEvents.TilesetLoad event = new GameEvents.TilesetLoad();
+            event.begin();
+            boolean loaded = false;
+            try {
+                T asset = task.load();
+                loaded = true;
+                return asset;
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.map = path;
+                    event.path = assetPath;
+                    event.kind = kind;
+                    event.failed = !loaded;
+                    event.commit();
+                }
+            }
+        });
+    }
+
+    // Place the tilesets in map order once they have loaded, and register their animations under their global ids
+    private void awaitTilesets() {
+        // Count every .tsx file and image as it finishes, in whatever order that happens
+        int total = tilesetLoads.size() * 2;
+        AtomicInteger done = new AtomicInteger();
+        for (TilesetLoad load : tilesetLoads) {
+            for (CompletableFuture<?> asset : Arrays.asList(load.definition, load.image)) {
+                asset.whenComplete((result, error) -> {
+                    synchronized (done) {
+                        loadListener.progress("Loading tilesets", done.incrementAndGet(), total);
                     }
-                    // Add animation to the map (keyed by the global tile id)
-                    animations.put(firstGid + localTileId, new Animation(frames));
+                });
+            }
+        }
+
+        for (TilesetLoad load : tilesetLoads) {
+            TilesetDefinition definition;
+            try {
+                definition = load.definition.join();
+            } catch (CompletionException e) {
+                reportLoadError(e.getCause());
+                tilesets.add(null);
+                tilesetImages.add(null);
+                continue;
+            }
+
+            tilesets.add(definition.place(load.firstGid));
+            for (Map.Entry<Integer, Animation> entry : definition.animations.entrySet()) {
+                animations.put(load.firstGid + entry.getKey(), entry.getValue());
+            }
+            try {
+                tilesetImages.add(load.image.join());
+            } catch (CompletionException e) {
+                reportLoadError(e.getCause());  // The tiles stay blank
+                tilesetImages.add(null);
+            }
+        }
+        tilesetLoads.clear();
+    }
+
+    private void reportLoadError(Throwable error) {
+        AssetLoadException loadError = error instanceof AssetLoadException
+                ? (AssetLoadException) error : new AssetLoadException("map asset", error);
+        loadErrors.add(loadError);
+        System.err.println(loadError.getMessage());
+    }
+
+    void addAnimation(int gid, Animation animation) {
+        animations.put(gid, animation);
+    }
+
+    void addLayer(Layer layer) {
+        layers.add(layer);
+    }
+
+    void addObjectLayer(ObjectLayer objectLayer) {
+        objectLayers.add(objectLayer);
+    }
+
+    // Fallback parser: builds the whole document tree, then walks it
+    private void parseDom(String filePath) throws Exception {
+        File file = new File(filePath);
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(file);
+
+        Element root = document.getDocumentElement();
+        this.width = Integer.parseInt(root.getAttribute("width"));
+        this.height = Integer.parseInt(root.getAttribute("height"));
+        this.tileWidth = Integer.parseInt(root.getAttribute("tilewidth"));
+        this.tileHeight = Integer.parseInt(root.getAttribute("tileheight"));
+        this.infinite = "1".equals(root.getAttribute("infinite"));
+
+        // Parse tilesets and referenced .tsx files
+        NodeList tilesetNodes = root.getElementsByTagName("tileset");
+        for (int i = 0; i < tilesetNodes.getLength(); i++) {
+            Element tilesetElement = (Element) tilesetNodes.item(i);
+            int firstGid = Integer.parseInt(tilesetElement.getAttribute("firstgid"));
+            String tsxSource = tilesetElement.getAttribute("source");
+            tsxSource = "resources/assets/" + tsxSource;
+            loadTileset(tsxSource, firstGid, TmxParser::parseTileset);
+        }
+
+        // Parse tile layers
+        NodeList layerNodes = root.getElementsByTagName("layer");
+        for (int i = 0; i < layerNodes.getLength(); i++) {
+            Element layerElement = (Element) layerNodes.item(i);
+            int layerWidth = Integer.parseInt(layerElement.getAttribute("width"));
+            int layerHeight = Integer.parseInt(layerElement.getAttribute("height"));
+            Element dataElement = (Element) layerElement.getElementsByTagName("data").item(0);
+            String encoding = dataElement.getAttribute("encoding");
+            String compression = dataElement.getAttribute("compression");
+
+            if (infinite) {
+                ChunkedLayer layer = new ChunkedLayer(layerElement.getAttribute("name"), layers.size());
+                NodeList chunkNodes = dataElement.getElementsByTagName("chunk");
+                for (int j = 0; j < chunkNodes.getLength(); j++) {
+                    Element chunkElement = (Element) chunkNodes.item(j);
+                    int chunkWidth = Integer.parseInt(chunkElement.getAttribute("width"));
+                    int chunkHeight = Integer.parseInt(chunkElement.getAttribute("height"));
+                    addChunk(layer,
+                            Integer.parseInt(chunkElement.getAttribute("x")),
+                            Integer.parseInt(chunkElement.getAttribute("y")),
+                            chunkWidth,
+                            chunkHeight,
+                            decodeData(chunkElement.getTextContent(), encoding, compression, chunkWidth * chunkHeight));
                 }
+                layers.add(layer);
+                continue;
             }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+            // Decode the data once here; the raw text is dropped as soon as this loop iteration ends
+            Layer layer = new Layer(
+                    layerElement.getAttribute("name"),
+                    layerWidth,
+                    layerHeight,
+                    decodeData(dataElement.getTextContent(), encoding, compression, layerWidth * layerHeight)
+            );
+            layers.add(layer);
+        }
+
+        // Parse object layers
+        NodeList objectLayerNodes = root.getElementsByTagName("objectgroup");
+        for (int i = 0; i < objectLayerNodes.getLength(); i++) {
+            Element objectLayerElement = (Element) objectLayerNodes.item(i);
+            ObjectLayer objectLayer = new ObjectLayer(objectLayerElement.getAttribute("name"));
+
+            NodeList objectNodes = objectLayerElement.getElementsByTagName("object");
+            for (int j = 0; j < objectNodes.getLength(); j++) {
+                Element objectElement = (Element) objectNodes.item(j);
+
+                int id = Integer.parseInt(objectElement.getAttribute("id"));
+                int gid = objectElement.hasAttribute("gid") ? Integer.parseInt(objectElement.getAttribute("gid")) : 0;
+                String name = objectElement.hasAttribute("name") ? objectElement.getAttribute("name") : "Unnamed";
+                float x = Float.parseFloat(objectElement.getAttribute("x"));
+                float y = Float.parseFloat(objectElement.getAttribute("y"));
+                float width = objectElement.hasAttribute("width") ? Float.parseFloat(objectElement.getAttribute("width")) : 0;
+                float height = objectElement.hasAttribute("height") ? Float.parseFloat(objectElement.getAttribute("height")) : 0;
+
+                // Get properties for each object
+                Map<String, String> properties = getObjectProperties(objectElement);
+
+                // Add object to the object layer
+                MapObject mapObject = new MapObject(id, gid, name, x, y, width, height, properties);
+                mapObject.rotation = objectElement.hasAttribute("rotation") ? Float.parseFloat(objectElement.getAttribute("rotation")) : 0;
+                NodeList polygonNodes = objectElement.getElementsByTagName("polygon");
+                if (polygonNodes.getLength() > 0) {
+                    mapObject.polygon = parsePoints(((Element) polygonNodes.item(0)).getAttribute("points"));
+                }
+                objectLayer.addObject(mapObject);
+            }
+
+            objectLayers.add(objectLayer);
+        }
+    }
+
+    private static int[] decodeData(String data, String encoding, String compression, int tileCount) throws IOException {
+        TileDataDecoder decoder = TileDataDecoder.forEncoding(encoding, compression, tileCount);
+        decoder.feed(data.toCharArray(), 0, data.length());
+        return decoder.finish();
+    }
+
+    // Parse a .tsx file; maps get it through the tileset registry, so each file is parsed once
+    private static TilesetDefinition parseTileset(String tsxFilePath) throws Exception {
+        File file = new File(tsxFilePath);
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        DocumentBuilder builder = factory.newDocumentBuilder();
+        Document document = builder.parse(file);
+
+        Element root = document.getDocumentElement();
+        Element imageElement = (Element) root.getElementsByTagName("image").item(0);
+        String imageSource = imageElement.getAttribute("source");
+
+        int tileWidth = Integer.parseInt(root.getAttribute("tilewidth"));
+        int tileHeight = Integer.parseInt(root.getAttribute("tileheight"));
+        int tileCount = Integer.parseInt(root.getAttribute("tilecount"));
+        int columns = Integer.parseInt(root.getAttribute("columns"));
+
+        // Parse animations within the tileset
+        Map<Integer, Animation> tileAnimations = new HashMap<>();
+        NodeList tileNodes = root.getElementsByTagName("tile");
+        for (int i = 0; i < tileNodes.getLength(); i++) {
+            Element tileElement = (Element) tileNodes.item(i);
+            int localTileId = Integer.parseInt(tileElement.getAttribute("id"));
+
+            // Check if the tile has an animation
+            NodeList animationNodes = tileElement.getElementsByTagName("animation");
+            if (animationNodes.getLength() > 0) {
+                List<Frame> frames = new ArrayList<>();
+                NodeList frameNodes = ((Element) animationNodes.item(0)).getElementsByTagName("frame");
+                for (int j = 0; j < frameNodes.getLength(); j++) {
+                    Element frameElement = (Element) frameNodes.item(j);
+                    int frameTileId = Integer.parseInt(frameElement.getAttribute("tileid"));
+                    int duration = Integer.parseInt(frameElement.getAttribute("duration"));
+                    frames.add(new Frame(frameTileId, duration));
+                }
+                // Keyed by the local tile id, maps add their firstGid
+                if (!frames.isEmpty()) {
+                    tileAnimations.put(localTileId, new Animation(frames));
+                }
+            }
+        }
+
+        return new TilesetDefinition(imageSource, tileWidth, tileHeight, tileCount, columns, tileAnimations);
+    }
+
+    // Collect the (sorted) indices of all cells holding an animated tile
+    private long[] findAnimatedCells(int[] tiles) {
+        long[] cells = new long[16];
+        int count = 0;
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != 0 && animations.containsKey(tiles[i] & GidTable.GID_MASK)) {
+                if (count == cells.length) {
+                    cells = Arrays.copyOf(cells, count * 2);
+                }
+                cells[count++] = i;
+            }
         }
-        return tileset;
+        return Arrays.copyOf(cells, count);
+    }
+
+    // Parse a Tiled point list ("x1,y1 x2,y2 ...") into interleaved x/y coordinates
+    static float[] parsePoints(String points) {
+        String[] pairs = points.trim().split("\\s+");
+        float[] coordinates = new float[pairs.length * 2];
+        for (int i = 0; i < pairs.length; i++) {
+            int comma = pairs[i].indexOf(',');
+            coordinates[i * 2] = Float.parseFloat(pairs[i].substring(0, comma));
+            coordinates[i * 2 + 1] = Float.parseFloat(pairs[i].substring(comma + 1));
+        }
+        return coordinates;
     }
 
     // New method to parse object properties
@@ -152,12 +583,7 @@ public class TmxParser {
 
     // Method to find the tileset that contains a given tileId
     public Tileset getTilesetForTile(int tileId) {
-        for (Tileset tileset : tilesets) {
-            if (tileId >= tileset.firstGid) {
-                return tileset;
-            }
-        }
-        return null;  // Return null if no matching tileset is found
+        return gidTable.getTileset(tileId);  // Null if no tileset contains the tile
     }
 
     // Method to retrieve tile animations
@@ -170,6 +596,10 @@ public class TmxParser {
         return tilesets;
     }
 
+    public GidTable getGidTable() {
+        return gidTable;
+    }
+
     public List<Layer> getLayers() {
         return layers;
     }
@@ -186,6 +616,15 @@ public class TmxParser {
         return objectLayers;
     }
 
+    public CollisionMask getCollisionMask() {
+        return collisionMask;
+    }
+
+    // The live objects of the map; the object layers keep the objects as parsed
+    public ObjectStore getObjectStore() {
+        return objectStore;
+    }
+
     public Map<Integer, Animation> getAnimations() {
         return animations;
     }
@@ -198,8 +637,51 @@ public class TmxParser {
         return height;
     }
 
+    // Give the map's tilesets back to the shared registry and delete its temporary files.
+    // The map and its renderers must not be used afterwards.
+    public void dispose() {
+        tilesetLease.release();
+        if (chunkRegionFile != null) {
+            chunkRegionFile.close();
+        }
+    }
+
+    // The .tmx file the map was loaded from
+    public String getPath() {
+        return path;
+    }
+
+    // The .tmx and .tsx files the map was read from
+    public List<String> getSourceFiles() {
+        return sourceFiles;
+    }
+
+    // The assets that failed to load, empty if the map loaded completely
+    public List<AssetLoadException> getLoadErrors() {
+        return Collections.unmodifiableList(loadErrors);
+    }
+
+    // Whether the map was saved as an infinite (chunked) map
+    public boolean isInfinite() {
+        return infinite;
+    }
+
+    // Where the chunks of an infinite map are spilled, or null for a fixed-size map
+    public ChunkRegionFile getChunkRegionFile() {
+        return chunkRegionFile;
+    }
+
+    // Tiled tile coordinates of tile (0, 0); infinite maps are shifted to start at their first chunk
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
     // Inner class to represent a tileset
-    class Tileset {
+    static class Tileset {
         int firstGid;
         String imageSource;
         int tileWidth, tileHeight;
@@ -216,29 +698,297 @@ public class TmxParser {
         }
     }
 
+    // Inner class to represent a parsed tileset before it is placed in a map. Immutable, so one
+    // instance is shared by every map using the tileset (see TilesetRegistry).
+    static final class TilesetDefinition {
+        final String imageSource;
+        final int tileWidth, tileHeight;
+        final int tileCount;
+        final int columns;
+        final Map<Integer, Animation> animations;  // Animated tiles by local tile id
+
+        TilesetDefinition(String imageSource, int tileWidth, int tileHeight, int tileCount, int columns, Map<Integer, Animation> animations) {
+            this.imageSource = imageSource;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.tileCount = tileCount;
+            this.columns = columns;
+            this.animations = Collections.unmodifiableMap(new HashMap<>(animations));
+        }
+
+        Tileset place(int firstGid) {
+            return new Tileset(firstGid, imageSource, tileWidth, tileHeight, tileCount, columns);
+        }
+    }
+
     // Inner class to represent a tile layer
-    class Layer {
+    static class Layer {
         String name;
         int width, height;
-        String data;
+        int[] tiles;  // Row-major GIDs, 0 means empty
+        // Sorted row-major indices (y * width + x) of cells holding animated tiles. Longs, since
+        // infinite maps can have more than 2^31 cells.
+        long[] animatedCells = new long[0];
 
-        Layer(String name, int width, int height, String data) {
+        Layer(String name, int width, int height, int[] tiles) {
             this.name = name;
             this.width = width;
             this.height = height;
-            this.data = data;
+            this.tiles = tiles;
+        }
+
+        // Get the GID at the given tile coordinates
+        public int getTile(int x, int y) {
+            return tiles[y * width + x];
         }
 
-        public String getData() {
-            return data;
+        // Change the GID at the given tile coordinates. Use TmxRenderer.setTile for rendered maps
+        // so cached chunks holding the tile get redrawn.
+        public void setTile(int x, int y, int gid) {
+            tiles[y * width + x] = gid;
+        }
+
+        // Add or remove a cell from the animated cell index after its tile changed
+        void updateAnimatedCell(int x, int y, boolean animated) {
+            long cell = (long) y * width + x;
+            int position = Arrays.binarySearch(animatedCells, cell);
+            if (animated && position < 0) {
+                int insertAt = -position - 1;
+                long[] cells = new long[animatedCells.length + 1];
+                System.arraycopy(animatedCells, 0, cells, 0, insertAt);
+                cells[insertAt] = cell;
+                System.arraycopy(animatedCells, insertAt, cells, insertAt + 1, animatedCells.length - insertAt);
+                animatedCells = cells;
+            } else if (!animated && position >= 0) {
+                long[] cells = new long[animatedCells.length - 1];
+                System.arraycopy(animatedCells, 0, cells, 0, position);
+                System.arraycopy(animatedCells, position + 1, cells, position, cells.length - position);
+                animatedCells = cells;
+            }
+        }
+
+        public long[] getAnimatedCells() {
+            return animatedCells;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    // Inner class to represent a tile layer of a compiled map. Tiles are read in place from the
+    // memory-mapped file and only copied into the tiles array once one of them is changed.
+    static class MappedLayer extends Layer {
+        private final IntBuffer mappedTiles;
+
+        MappedLayer(String name, int width, int height, IntBuffer mappedTiles, long[] animatedCells) {
+            super(name, width, height, null);
+            this.mappedTiles = mappedTiles;
+            this.animatedCells = animatedCells;
+        }
+
+        @Override
+        public int getTile(int x, int y) {
+            return tiles != null ? tiles[y * width + x] : mappedTiles.get(y * width + x);
+        }
+
+        @Override
+        public void setTile(int x, int y, int gid) {
+            if (tiles == null) {
+                tiles = new int[width * height];
+                mappedTiles.get(0, tiles);  // The mapping is read-only, so edits go to a private copy
+            }
+            tiles[y * width + x] = gid;
+        }
+    }
+
+    // Inner class to represent a tile layer of an infinite map. Only the chunks around the camera
+    // are held in memory (ChunkStreamer loads and evicts them); tiles outside them read as empty.
+    static class ChunkedLayer extends Layer {
+        final int index;  // Index of the layer in the map, part of its chunk keys
+        ChunkRegionFile regionFile;
+        GidTable gidTable;
+        private int originX, originY;  // Tiled tile coordinates of tile (0, 0)
+        private final Map<Long, int[]> chunks = new HashMap<>();  // Loaded chunks by region file key
+        private final Set<Long> dirtyChunks = new HashSet<>();  // Loaded chunks changed since they were read
+
+        // Tiles are mostly read in runs along a row, so remember the last chunk looked up
+        private long lastKey = -1;
+        private int[] lastChunk;
+
+        ChunkedLayer(String name, int index) {
+            super(name, 0, 0, null);
+            this.index = index;
+        }
+
+        void setOrigin(int originX, int originY) {
+            this.originX = originX;
+            this.originY = originY;
+        }
+
+        @Override
+        public int getTile(int x, int y) {
+            int tileX = x + originX;
+            int tileY = y + originY;
+            int chunkWidth = regionFile.getChunkWidth();
+            int chunkHeight = regionFile.getChunkHeight();
+            long key = ChunkRegionFile.key(index, Math.floorDiv(tileX, chunkWidth), Math.floorDiv(tileY, chunkHeight));
+            if (key != lastKey) {
+                lastKey = key;
+                lastChunk = chunks.get(key);
+            }
+            if (lastChunk == null) {
+                return 0;
+            }
+            return lastChunk[Math.floorMod(tileY, chunkHeight) * chunkWidth + Math.floorMod(tileX, chunkWidth)];
+        }
+
+        // Changing a tile loads its chunk first; the change is written back when the chunk is evicted
+        @Override
+        public void setTile(int x, int y, int gid) {
+            int tileX = x + originX;
+            int tileY = y + originY;
+            int chunkWidth = regionFile.getChunkWidth();
+            int chunkHeight = regionFile.getChunkHeight();
+            int chunkX = Math.floorDiv(tileX, chunkWidth);
+            int chunkY = Math.floorDiv(tileY, chunkHeight);
+            long key = ChunkRegionFile.key(index, chunkX, chunkY);
+
+            int[] chunk = chunks.get(key);
+            if (chunk == null) {
+                try {
+                    chunk = regionFile.read(index, chunkX, chunkY);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                if (chunk == null) {
+                    chunk = new int[chunkWidth * chunkHeight];
+                }
+                install(chunkX, chunkY, chunk);
+            }
+            chunk[Math.floorMod(tileY, chunkHeight) * chunkWidth + Math.floorMod(tileX, chunkWidth)] = gid;
+            dirtyChunks.add(key);
+        }
+
+        /**
+         * Makes a chunk's tiles visible and indexes its animated cells.
+         *
+         * @param chunkX Chunk column in Tiled's chunk grid.
+         * @param chunkY Chunk row in Tiled's chunk grid.
+         * @param tiles  The chunk's row-major GIDs.
+         */
+        void install(int chunkX, int chunkY, int[] tiles) {
+            long key = ChunkRegionFile.key(index, chunkX, chunkY);
+            chunks.put(key, tiles);
+            if (key == lastKey) {
+                lastChunk = tiles;
+            }
+
+            // Row-major order inside the chunk is also row-major order in the layer, so the new cells come out sorted
+            int chunkWidth = regionFile.getChunkWidth();
+            int chunkHeight = regionFile.getChunkHeight();
+            long[] added = new long[tiles.length];
+            int count = 0;
+            for (int row = 0; row < chunkHeight; row++) {
+                int y = chunkY * chunkHeight + row - originY;
+                for (int column = 0; column < chunkWidth; column++) {
+                    int x = chunkX * chunkWidth + column - originX;
+                    int gid = tiles[row * chunkWidth + column];
+                    if (gid != 0 && gidTable.getAnimation(gid) != null && x >= 0 && y >= 0 && x < width && y < height) {
+                        added[count++] = (long) y * width + x;
+                    }
+                }
+            }
+            if (count > 0) {
+                animatedCells = mergeSorted(animatedCells, added, count);
+            }
+        }
+
+        /**
+         * Drops a chunk from memory, writing it back to the region file first if it changed.
+         *
+         * @return Whether the chunk was loaded.
+         */
+        boolean evict(int chunkX, int chunkY) {
+            long key = ChunkRegionFile.key(index, chunkX, chunkY);
+            int[] tiles = chunks.remove(key);
+            if (tiles == null) {
+                return false;
+            }
+            if (key == lastKey) {
+                lastChunk = null;
+            }
+            if (dirtyChunks.remove(key)) {
+                try {
+                    regionFile.write(index, chunkX, chunkY, tiles);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            // Drop the chunk's animated cells
+            int left = chunkX * regionFile.getChunkWidth() - originX;
+            int top = chunkY * regionFile.getChunkHeight() - originY;
+            int right = left + regionFile.getChunkWidth();
+            int bottom = top + regionFile.getChunkHeight();
+            int kept = 0;
+            long[] cells = animatedCells.clone();
+            for (long cell : animatedCells) {
+                long x = cell % width;
+                long y = cell / width;
+                if (x < left || x >= right || y < top || y >= bottom) {
+                    cells[kept++] = cell;
+                }
+            }
+            animatedCells = Arrays.copyOf(cells, kept);
+            return true;
+        }
+
+        boolean isLoaded(int chunkX, int chunkY) {
+            return chunks.containsKey(ChunkRegionFile.key(index, chunkX, chunkY));
+        }
+
+        // Region file keys of the loaded chunks
+        Set<Long> getLoadedChunks() {
+            return chunks.keySet();
+        }
+
+        public int getOriginX() {
+            return originX;
+        }
+
+        public int getOriginY() {
+            return originY;
+        }
+
+        private static long[] mergeSorted(long[] a, long[] b, int bCount) {
+            long[] merged = new long[a.length + bCount];
+            int i = 0, j = 0, k = 0;
+            while (i < a.length && j < bCount) {
+                merged[k++] = a[i] <= b[j] ? a[i++] : b[j++];
+            }
+            while (i < a.length) {
+                merged[k++] = a[i++];
+            }
+            while (j < bCount) {
+                merged[k++] = b[j++];
+            }
+            return merged;
         }
     }
 
     // Inner class to represent an object
-    class MapObject {
+    static class MapObject {
         int id, gid;
         String name;
+        int handle = -1;  // Index of this object in the map's ObjectStore
         float x, y, width, height;
+        float rotation;  // Degrees clockwise around (x, y)
+        float[] polygon;  // Interleaved x/y points relative to (x, y), or null for rectangles
         Map<String, String> properties;
 
         MapObject(int id, int gid, String name, float x, float y, float width, float height, Map<String, String> properties) {
@@ -259,7 +1009,7 @@ public class TmxParser {
     }
 
     // Inner class to represent an object layer
-    class ObjectLayer {
+    static class ObjectLayer {
         String name;
         List<MapObject> objects = new ArrayList<>();
 
@@ -277,7 +1027,7 @@ public class TmxParser {
     }
 
     // Inner class to represent an animation frame
-    class Frame {
+    static class Frame {
         int tileId;
         int duration;  // Duration in milliseconds
 
@@ -288,24 +1038,45 @@ public class TmxParser {
     }
 
     // Inner class to represent an animation sequence
-    class Animation {
+    static class Animation {
         List<Frame> frames;
         int totalDuration;
+        int[] frameEnds;  // Prefix sums of the frame durations, frameEnds[i] is when frame i ends
 
         Animation(List<Frame> frames) {
             this.frames = frames;
-            this.totalDuration = frames.stream().mapToInt(frame -> frame.duration).sum();
+            this.frameEnds = new int[frames.size()];
+            int time = 0;
+            for (int i = 0; i < frames.size(); i++) {
+                time += frames.get(i).duration;
+                frameEnds[i] = time;
+            }
+            this.totalDuration = time;
         }
 
-        Frame getFrameForTime(int time) {
-            int currentTime = 0;
-            for (Frame frame : frames) {
-                currentTime += frame.duration;
-                if (time < currentTime) {
-                    return frame;
+        // Index of the frame shown at the given time (0 <= time < totalDuration), found by binary search
+        int getFrameIndexForTime(int time) {
+            int low = 0;
+            int high = frameEnds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (frameEnds[mid] > time) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
                 }
             }
-            return frames.get(0);  // Fallback to the first frame
+            return low < frameEnds.length ? low : 0;  // Fallback to the first frame
+        }
+
+        Frame getFrameForTime(int time) {
+            return frames.get(getFrameIndexForTime(time));
+        }
+
+        // Milliseconds from the given time until the animation switches to its next frame
+        int timeUntilNextFrame(int time) {
+            int index = getFrameIndexForTime(time);
+            return Math.max(1, frameEnds[index] - time);
         }
     }
 }
@@ -0,0 +1,190 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Checks that the streaming parser reads maps exactly like the DOM parser (-Dtmx.parser=dom).
+ * Each map is parsed from its XML with both, skipping compiled copies, and the results are
+ * compared: map size, tilesets, the GIDs of every layer, animations and objects with their
+ * properties, rotation and polygons. Exits with status 1 on any difference or load error.
+ *
+ * Usage: java TmxParserParity [map.tmx ...], by default every map in resources/assets
+ */
+public class TmxParserParity {
+    private static final int MAX_REPORTED = 10;  // Differences listed per map
+
+    private final String mapPath;
+    private final List<String> differences = new ArrayList<>();
+
+    private TmxParserParity(String mapPath) {
+        this.mapPath = mapPath;
+    }
+
+    public static void main(String[] args) {
+        List<String> maps = new ArrayList<>(Arrays.asList(args));
+        if (maps.isEmpty()) {
+            File[] files = new File("resources/assets").listFiles((dir, name) -> name.endsWith(".tmx"));
+            if (files != null) {
+                for (File file : files) {
+                    maps.add(file.getPath());
+                }
+            }
+            maps.sort(null);
+        }
+        if (maps.isEmpty()) {
+            System.err.println("No maps found in resources/assets");
+            System.exit(1);
+        }
+
+        int failed = 0;
+        for (String map : maps) {
+            TmxParserParity parity = new TmxParserParity(map);
+            parity.check();
+            if (parity.differences.isEmpty()) {
+                System.out.println("ok    " + map);
+            } else {
+                failed++;
+                System.out.println("FAIL  " + map + " (" + parity.differences.size() + " differences)");
+                for (String difference : parity.differences.subList(0, Math.min(MAX_REPORTED, parity.differences.size()))) {
+                    System.out.println("      " + difference);
+                }
+            }
+        }
+        System.out.println(maps.size() - failed + "/" + maps.size() + " maps parse the same with both parsers");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void check() {
+        TmxParser dom = new TmxParser(mapPath, true);
+        TmxParser stax = new TmxParser(mapPath, false);
+        try {
+            for (AssetLoadException error : dom.getLoadErrors()) {
+                differences.add("dom: " + error.getMessage());
+            }
+            for (AssetLoadException error : stax.getLoadErrors()) {
+                differences.add("stax: " + error.getMessage());
+            }
+            compareMaps(dom, stax);
+        } catch (IOException e) {
+            differences.add("Reading chunks failed: " + e.getMessage());
+        } finally {
+            dom.dispose();
+            stax.dispose();
+        }
+    }
+
+    private void compareMaps(TmxParser dom, TmxParser stax) throws IOException {
+        same("map width", dom.getMapWidth(), stax.getMapWidth());
+        same("map height", dom.getMapHeight(), stax.getMapHeight());
+        same("tile width", dom.getTileWidth(), stax.getTileWidth());
+        same("tile height", dom.getTileHeight(), stax.getTileHeight());
+        same("infinite", dom.isInfinite(), stax.isInfinite());
+        same("origin", dom.getOriginX() + "," + dom.getOriginY(), stax.getOriginX() + "," + stax.getOriginY());
+
+        same("tileset count", dom.getTilesets().size(), stax.getTilesets().size());
+        for (int i = 0; i < Math.min(dom.getTilesets().size(), stax.getTilesets().size()); i++) {
+            same("tileset " + i, describe(dom.getTilesets().get(i)), describe(stax.getTilesets().get(i)));
+        }
+
+        same("layer count", dom.getLayers().size(), stax.getLayers().size());
+        for (int i = 0; i < Math.min(dom.getLayers().size(), stax.getLayers().size()); i++) {
+            compareLayers(dom, stax, i);
+        }
+
+        same("animated GIDs", new TreeMap<>(dom.getAnimations()).keySet(), new TreeMap<>(stax.getAnimations()).keySet());
+        for (Map.Entry<Integer, TmxParser.Animation> entry : dom.getAnimations().entrySet()) {
+            TmxParser.Animation other = stax.getAnimations().get(entry.getKey());
+            if (other != null) {
+                same("animation of GID " + entry.getKey(), describe(entry.getValue()), describe(other));
+            }
+        }
+
+        same("object layer count", dom.getObjectLayers().size(), stax.getObjectLayers().size());
+        for (int i = 0; i < Math.min(dom.getObjectLayers().size(), stax.getObjectLayers().size()); i++) {
+            TmxParser.ObjectLayer domLayer = dom.getObjectLayers().get(i);
+            TmxParser.ObjectLayer staxLayer = stax.getObjectLayers().get(i);
+            String label = "object layer " + i + " (" + domLayer.name + ")";
+            same(label + " name", domLayer.name, staxLayer.name);
+            same(label + " object count", domLayer.objects.size(), staxLayer.objects.size());
+            for (int j = 0; j < Math.min(domLayer.objects.size(), staxLayer.objects.size()); j++) {
+                same(label + " object " + j, describe(domLayer.objects.get(j)), describe(staxLayer.objects.get(j)));
+            }
+        }
+    }
+
+    private void compareLayers(TmxParser dom, TmxParser stax, int index) throws IOException {
+        TmxParser.Layer domLayer = dom.getLayers().get(index);
+        TmxParser.Layer staxLayer = stax.getLayers().get(index);
+        String label = "layer " + index + " (" + domLayer.name + ")";
+        same(label + " name", domLayer.name, staxLayer.name);
+        same(label + " type", domLayer.getClass().getSimpleName(), staxLayer.getClass().getSimpleName());
+        same(label + " size", domLayer.width + "x" + domLayer.height, staxLayer.width + "x" + staxLayer.height);
+        if (domLayer.getClass() != staxLayer.getClass() || domLayer.width != staxLayer.width || domLayer.height != staxLayer.height) {
+            return;  // The tiles can't line up
+        }
+
+        if (domLayer.tiles != null && staxLayer.tiles != null) {
+            for (int cell = 0; cell < domLayer.tiles.length; cell++) {
+                if (domLayer.tiles[cell] != staxLayer.tiles[cell]) {
+                    differences.add(label + " GID at (" + cell % domLayer.width + ", " + cell / domLayer.width + "): dom "
+                            + Integer.toUnsignedString(domLayer.tiles[cell]) + ", stax " + Integer.toUnsignedString(staxLayer.tiles[cell]));
+                }
+            }
+            return;
+        }
+
+        // Infinite maps keep their chunks in the region file; compare every chunk of the map's bounds
+        ChunkRegionFile domChunks = dom.getChunkRegionFile();
+        ChunkRegionFile staxChunks = stax.getChunkRegionFile();
+        int chunkWidth = domChunks.getChunkWidth();
+        int chunkHeight = domChunks.getChunkHeight();
+        same(label + " chunk size", chunkWidth + "x" + chunkHeight, staxChunks.getChunkWidth() + "x" + staxChunks.getChunkHeight());
+        int firstChunkX = Math.floorDiv(dom.getOriginX(), chunkWidth);
+        int firstChunkY = Math.floorDiv(dom.getOriginY(), chunkHeight);
+        int lastChunkX = Math.floorDiv(dom.getOriginX() + dom.getMapWidth() - 1, chunkWidth);
+        int lastChunkY = Math.floorDiv(dom.getOriginY() + dom.getMapHeight() - 1, chunkHeight);
+        for (int chunkY = firstChunkY; chunkY <= lastChunkY; chunkY++) {
+            for (int chunkX = firstChunkX; chunkX <= lastChunkX; chunkX++) {
+                if (!Arrays.equals(domChunks.read(index, chunkX, chunkY), staxChunks.read(index, chunkX, chunkY))) {
+                    differences.add(label + " chunk (" + chunkX + ", " + chunkY + ") differs");
+                }
+            }
+        }
+    }
+
+    private void same(String what, Object dom, Object stax) {
+        if (!Objects.equals(dom, stax)) {
+            differences.add(what + ": dom " + dom + ", stax " + stax);
+        }
+    }
+
+    private static String describe(TmxParser.Tileset tileset) {
+        if (tileset == null) {
+            return "missing";
+        }
+        return "firstGid=" + tileset.firstGid + " image=" + tileset.imageSource + " tile=" + tileset.tileWidth + "x" + tileset.tileHeight
+                + " count=" + tileset.tileCount + " columns=" + tileset.columns;
+    }
+
+    private static String describe(TmxParser.Animation animation) {
+        StringBuilder frames = new StringBuilder();
+        for (TmxParser.Frame frame : animation.frames) {
+            frames.append(frame.tileId).append('/').append(frame.duration).append("ms ");
+        }
+        return frames.toString().trim();
+    }
+
+    private static String describe(TmxParser.MapObject object) {
+        return "id=" + object.id + " gid=" + Integer.toUnsignedString(object.gid) + " name=" + object.name
+                + " at " + object.x + "," + object.y + " size " + object.width + "x" + object.height
+                + " rotation=" + object.rotation + " polygon=" + Arrays.toString(object.polygon)
+                + " properties=" + (object.properties != null ? new TreeMap<>(object.properties) : null);
+    }
+}
@@ -1,120 +1,315 @@
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.File;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class TmxRenderer {
+    private static final int CULL_MARGIN_TILES = 1;  // Extra tiles drawn around the view
+
     private TmxParser parser;
-    private Map<Integer, TilesetImageData> tilesetImages = new HashMap<>();
+    private GidTable gidTable;
+    private ChunkCache chunkCache;
+    private boolean chunkCacheEnabled = true;
     private long animationStartTime;
+    private long damageCheckTime;  // Animation time of the last addAnimationDamage()
+    private FrameStats frameStats = FrameStats.NONE;
+
+    // Counted during each frame for the game.RenderFrame event
+    private long tilesDrawn, tilesCulled;
+    private int animatedTiles, objectsDrawn, objectsCulled;
 
     public TmxRenderer(TmxParser parser) {
         this.parser = parser;
-        loadTilesets();
+        this.gidTable = parser.getGidTable();
+        this.chunkCache = new ChunkCache(gidTable, parser.getTileWidth(), parser.getTileHeight(), ChunkCache.DEFAULT_BUDGET_BYTES);
         this.animationStartTime = System.currentTimeMillis();
     }
 
-    class TilesetImageData {
-        BufferedImage image;
-        int tileWidth, tileHeight;
-        int tileCount;
-        int columns;
+    // Change a tile, keeping the animated cell index and the cached chunk that holds it up to date
+    public void setTile(int layerIndex, int x, int y, int gid) {
+        TmxParser.Layer layer = parser.getLayers().get(layerIndex);
+        layer.setTile(x, y, gid);
+        layer.updateAnimatedCell(x, y, gidTable.getAnimation(gid) != null);
+        chunkCache.invalidateTile(layerIndex, x, y);
+    }
 
-        TilesetImageData(BufferedImage image, int tileWidth, int tileHeight, int tileCount, int columns) {
-            this.image = image;
-            this.tileWidth = tileWidth;
-            this.tileHeight = tileHeight;
-            this.tileCount = tileCount;
-            this.columns = columns;
-        }
+    // Redraw the cached chunks covering a block of tiles, e.g. after ChunkStreamer loaded it
+    public void invalidateRegion(int layerIndex, int x, int y, int width, int height) {
+        chunkCache.invalidateRegion(layerIndex, x, y, width, height);
     }
 
-    private void loadTilesets() {
-        for (TmxParser.Tileset tileset : parser.getTilesets()) {
-            try {
-                BufferedImage tilesetImage = ImageIO.read(new File("resources/assets/" + tileset.imageSource));
-                TilesetImageData data = new TilesetImageData(tilesetImage, tileset.tileWidth, tileset.tileHeight, tileset.tileCount, tileset.columns);
-                tilesetImages.put(tileset.firstGid, data);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+    // Switch between blitting pre-rendered chunks and drawing every tile each frame
+    public void setChunkCacheEnabled(boolean enabled) {
+        this.chunkCacheEnabled = enabled;
+        if (!enabled) {
+            chunkCache.clear();
         }
     }
 
+    public ChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
+    // Time the tile and object layers of each frame
+    public void setFrameStats(FrameStats frameStats) {
+        this.frameStats = frameStats;
+    }
+
+    // Render the whole map
     public void render(Graphics g) {
-        renderTileLayers(g);
-        renderObjectLayers(g);
+        render(g, new Rectangle(0, 0, parser.getMapWidth() * parser.getTileWidth(), parser.getMapHeight() * parser.getTileHeight()));
     }
 
-    private void renderTileLayers(Graphics g) {
+    // Render only the tiles and objects that intersect the given world rectangle (in map pixels)
+    // and the clip of g, e.g. the damaged part of the screen
+    public void render(Graphics g, Rectangle view) {
+        Rectangle clip = g.getClipBounds();  // In map pixels, since g has the camera transform
+        if (clip != null) {
+            view = view.intersection(clip);
+            if (view.isEmpty()) {
+                return;
+            }
+        }
+        GameEvents.RenderFrame event = new GameEvents.RenderFrame();
+        event.begin();
+        long chunkMisses = chunkCache.getMisses();
+        tilesDrawn = 0;
+        tilesCulled = 0;
+        animatedTiles = 0;
+        objectsDrawn = 0;
+        objectsCulled = 0;
+
+        long animationTime = System.currentTimeMillis() - animationStartTime;
+        long start = frameStats.start();
+        renderTileLayers(g, view, animationTime);
+        start = frameStats.stop(FrameStats.TILE_LAYERS, start);
+        renderObjectLayers(g, view, animationTime);
+        frameStats.stop(FrameStats.OBJECT_LAYERS, start);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.map = parser.getPath();
+            event.viewX = view.x;
+            event.viewY = view.y;
+            event.viewWidth = view.width;
+            event.viewHeight = view.height;
+            event.tilesDrawn = tilesDrawn;
+            event.tilesCulled = tilesCulled;
+            event.animatedTiles = animatedTiles;
+            event.chunksRasterized = chunkCache.getMisses() - chunkMisses;
+            event.objectsDrawn = objectsDrawn;
+            event.objectsCulled = objectsCulled;
+            event.commit();
+        }
+    }
+
+    private void renderTileLayers(Graphics g, Rectangle view, long animationTime) {
+        int tileWidth = parser.getTileWidth();
+        int tileHeight = parser.getTileHeight();
+
+        // Visible tile range, padded by a small margin so partially visible tiles at the edges are drawn
+        int firstColumn = Math.floorDiv(view.x, tileWidth) - CULL_MARGIN_TILES;
+        int firstRow = Math.floorDiv(view.y, tileHeight) - CULL_MARGIN_TILES;
+        int lastColumn = Math.floorDiv(view.x + view.width, tileWidth) + CULL_MARGIN_TILES;
+        int lastRow = Math.floorDiv(view.y + view.height, tileHeight) + CULL_MARGIN_TILES;
+
         List<TmxParser.Layer> layers = parser.getLayers();
-        for (TmxParser.Layer layer : layers) {
-            String[] tiles = layer.getData().split(",");
-            int tileIndex = 0;
-
-            for (int y = 0; y < layer.height; y++) {
-                for (int x = 0; x < layer.width; x++) {
-                    int gid = Integer.parseInt(tiles[tileIndex++].trim());
-                    if (gid != 0) {
-                        BufferedImage tileImage = getTileImage(gid);
-                        if (tileImage != null) {
-                            g.drawImage(tileImage, x * parser.getTileWidth(), y * parser.getTileHeight(), parser.getTileWidth(), parser.getTileHeight(), null);
-                        }
-                    }
-                }
+        for (int layerIndex = 0; layerIndex < layers.size(); layerIndex++) {
+            TmxParser.Layer layer = layers.get(layerIndex);
+            int startX = Math.max(0, firstColumn);
+            int startY = Math.max(0, firstRow);
+            int endX = Math.min(layer.width - 1, lastColumn);
+            int endY = Math.min(layer.height - 1, lastRow);
+            long layerTiles = (long) layer.width * layer.height;
+            if (startX > endX || startY > endY) {
+                tilesCulled += layerTiles;
+                continue;
+            }
+
+            GameEvents.RenderLayer event = new GameEvents.RenderLayer();
+            event.begin();
+            long chunkMisses = chunkCache.getMisses();
+
+            // Static tiles come from the chunk cache (or are drawn directly), animated cells are drawn on top
+            if (chunkCacheEnabled) {
+                chunkCache.render(g, layerIndex, layer, startX, startY, endX, endY);
+            } else {
+                renderStaticTiles(g, layer, startX, startY, endX, endY);
+            }
+            int animated = renderAnimatedCells(g, layer, startX, startY, endX, endY, animationTime);
+
+            long visibleTiles = (long) (endX - startX + 1) * (endY - startY + 1);
+            tilesDrawn += visibleTiles;
+            tilesCulled += layerTiles - visibleTiles;
+            animatedTiles += animated;
+            event.end();
+            if (event.shouldCommit()) {
+                event.map = parser.getPath();
+                event.layer = layer.name;
+                event.layerIndex = layerIndex;
+                event.tilesDrawn = visibleTiles;
+                event.tilesCulled = layerTiles - visibleTiles;
+                event.animatedTiles = animated;
+                event.chunksRasterized = chunkCache.getMisses() - chunkMisses;
+                event.commit();
             }
         }
     }
 
-    private void renderObjectLayers(Graphics g) {
-        List<TmxParser.ObjectLayer> objectLayers = parser.getObjectLayers();
-        for (TmxParser.ObjectLayer objectLayer : objectLayers) {
-            for (TmxParser.MapObject mapObject : objectLayer.getObjects()) {
-                BufferedImage objectImage = getTileImage(mapObject.gid);
-                if (objectImage != null) {
-                    g.drawImage(objectImage, (int) mapObject.x, (int) mapObject.y, (int) mapObject.width, (int) mapObject.height, null);
+    private void renderStaticTiles(Graphics g, TmxParser.Layer layer, int startX, int startY, int endX, int endY) {
+        int tileWidth = parser.getTileWidth();
+        int tileHeight = parser.getTileHeight();
+        for (int y = startY; y <= endY; y++) {
+            for (int x = startX; x <= endX; x++) {
+                int gid = layer.getTile(x, y);
+                if (gid != 0 && gidTable.getAnimation(gid) == null) {
+                    gidTable.drawTile(g, gid, x * tileWidth, y * tileHeight, tileWidth, tileHeight);
                 }
             }
         }
     }
 
-    // Corrected method to get the tile image with proper animation handling and tileset correction
-    private BufferedImage getTileImage(int gid) {
-        // Check if the tile is animated
-        TmxParser.Animation animation = parser.getAnimations().get(gid);
-        if (animation != null) {
-            int elapsedTime = (int) ((System.currentTimeMillis() - animationStartTime) % animation.totalDuration);
-            TmxParser.Frame frame = animation.getFrameForTime(elapsedTime);
-            gid = frame.tileId + findTilesetFirstGid(gid);  // Adjust gid using the correct tileset
+    // Returns the number of animated cells drawn
+    private int renderAnimatedCells(Graphics g, TmxParser.Layer layer, int startX, int startY, int endX, int endY, long animationTime) {
+        long[] cells = layer.getAnimatedCells();
+        if (cells.length == 0) {
+            return 0;
         }
 
-        // Ensure correct tile indexing and alignment within the tileset
-        for (Map.Entry<Integer, TilesetImageData> entry : tilesetImages.entrySet()) {
-            int firstGid = entry.getKey();
-            TilesetImageData data = entry.getValue();
-
-            int lastGid = firstGid + data.tileCount - 1;
-            if (gid >= firstGid && gid <= lastGid) {
-                int localId = gid - firstGid;
-                int tilesetX = (localId % data.columns) * data.tileWidth;
-                int tilesetY = (localId / data.columns) * data.tileHeight;
-                return data.image.getSubimage(tilesetX, tilesetY, data.tileWidth, data.tileHeight);
+        int tileWidth = parser.getTileWidth();
+        int tileHeight = parser.getTileHeight();
+        long firstCell = (long) startY * layer.width + startX;
+        long lastCell = (long) endY * layer.width + endX;
+
+        // Cells are sorted row-major, so skip straight to the first visible row
+        int drawn = 0;
+        for (int i = lowerBound(cells, firstCell); i < cells.length && cells[i] <= lastCell; i++) {
+            int x = (int) (cells[i] % layer.width);
+            if (x < startX || x > endX) {
+                continue;
             }
+            int y = (int) (cells[i] / layer.width);
+            gidTable.drawTile(g, getTileGid(layer.getTile(x, y), animationTime), x * tileWidth, y * tileHeight, tileWidth, tileHeight);
+            drawn++;
+        }
+        return drawn;
+    }
+
+    private void renderObjectLayers(Graphics g, Rectangle view, long animationTime) {
+        int marginX = CULL_MARGIN_TILES * parser.getTileWidth();
+        int marginY = CULL_MARGIN_TILES * parser.getTileHeight();
+        float minX = view.x - marginX;
+        float minY = view.y - marginY;
+        float maxX = view.x + view.width + marginX;
+        float maxY = view.y + view.height + marginY;
+
+        // Look up the live objects near the view, then draw them in map order
+        ObjectStore objects = parser.getObjectStore();
+        SpatialHash index = objects.getIndex();
+        int count = index.query(minX, minY, maxX - minX, maxY - minY);
+        index.sortResults();
+
+        for (int i = 0; i < count; i++) {
+            int handle = index.getResult(i);
+            if (!objects.hasFlag(handle, ObjectStore.FLAG_DRAWN)) {
+                objectsCulled++;
+                continue;
+            }
+            float x = objects.getX(handle);
+            float y = objects.getY(handle);
+            float width = objects.getWidth(handle);
+            float height = objects.getHeight(handle);
+
+            // Skip objects completely outside the padded view
+            if (x + width < minX || x > maxX || y + height < minY || y > maxY) {
+                objectsCulled++;
+                continue;
+            }
+            gidTable.drawTile(g, getTileGid(objects.getGid(handle), animationTime), (int) x, (int) y, (int) width, (int) height);
+            objectsDrawn++;
+        }
+    }
+
+    /**
+     * Adds the animated tiles and objects in view whose frame changed since the last call
+     * to the damage.
+     *
+     * @param view The part of the map on screen, in map pixels.
+     */
+    public void addAnimationDamage(Rectangle view, DamageTracker damage) {
+        long before = damageCheckTime;
+        long now = System.currentTimeMillis() - animationStartTime;
+        damageCheckTime = now;
+        if (damage.isFull()) {
+            return;
+        }
+        int tileWidth = parser.getTileWidth();
+        int tileHeight = parser.getTileHeight();
+
+        int firstColumn = Math.max(0, Math.floorDiv(view.x, tileWidth));
+        int firstRow = Math.max(0, Math.floorDiv(view.y, tileHeight));
+        int lastColumn = Math.floorDiv(view.x + view.width, tileWidth);
+        int lastRow = Math.floorDiv(view.y + view.height, tileHeight);
+        for (TmxParser.Layer layer : parser.getLayers()) {
+            long[] cells = layer.getAnimatedCells();
+            int endX = Math.min(layer.width - 1, lastColumn);
+            int endY = Math.min(layer.height - 1, lastRow);
+            if (cells.length == 0 || firstColumn > endX || firstRow > endY) {
+                continue;
+            }
+            long lastCell = (long) endY * layer.width + endX;
+            for (int i = lowerBound(cells, (long) firstRow * layer.width + firstColumn); i < cells.length && cells[i] <= lastCell; i++) {
+                int x = (int) (cells[i] % layer.width);
+                if (x < firstColumn || x > endX) {
+                    continue;
+                }
+                int y = (int) (cells[i] / layer.width);
+                if (frameChanged(layer.getTile(x, y), before, now)) {
+                    damage.addMapRegion(x * tileWidth, y * tileHeight, tileWidth, tileHeight);
+                }
+            }
+        }
+
+        ObjectStore objects = parser.getObjectStore();
+        SpatialHash index = objects.getIndex();
+        int count = index.query(view.x, view.y, view.width, view.height);
+        for (int i = 0; i < count; i++) {
+            int handle = index.getResult(i);
+            if (objects.hasFlag(handle, ObjectStore.FLAG_DRAWN) && frameChanged(objects.getGid(handle), before, now)) {
+                damage.addMapRegion(objects.getX(handle), objects.getY(handle), objects.getWidth(handle), objects.getHeight(handle));
+            }
+        }
+    }
+
+    private boolean frameChanged(int gid, long before, long now) {
+        TmxParser.Animation animation = gidTable.getAnimation(gid);
+        if (animation == null) {
+            return false;
+        }
+        return animation.getFrameForTime((int) (before % animation.totalDuration))
+                != animation.getFrameForTime((int) (now % animation.totalDuration));
+    }
+
+    // Resolve animated tiles to the GID of their current frame
+    private int getTileGid(int gid, long animationTime) {
+        TmxParser.Animation animation = gidTable.getAnimation(gid);
+        if (animation != null) {
+            TmxParser.Frame frame = animation.getFrameForTime((int) (animationTime % animation.totalDuration));
+            return gidTable.getFrameGid(gid, frame.tileId);  // Frame ids are local to the animated tile's tileset
         }
-        return null;
+        return gid;
     }
 
-    // Helper method to find the correct tileset firstGid for the given gid
-    private int findTilesetFirstGid(int gid) {
-        int resultFirstGid = 0;
-        for (TmxParser.Tileset tileset : parser.getTilesets()) {
-            if (gid >= tileset.firstGid) {
-                resultFirstGid = tileset.firstGid;
+    // Index of the first element >= value in a sorted array
+    private static int lowerBound(long[] values, long value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
-        return resultFirstGid;
+        return low;
     }
-}
\ No newline at end of file
+}
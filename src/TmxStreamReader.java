@@ -0,0 +1,303 @@
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming (StAX) reader for TMX maps and TSX tilesets. It walks the file once and
+ * decodes layer data straight into tile arrays as the characters arrive, so neither a
+ * document tree nor the layer text is ever held in memory. Produces the same model as
+ * the DOM parser in TmxParser.
+ */
+public class TmxStreamReader {
+    private static final String ASSET_DIRECTORY = "resources/assets/";
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private final TmxParser target;
+
+    private TmxStreamReader(TmxParser target) {
+        this.target = target;
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);  // Hand out text in buffer-sized pieces
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        return factory;
+    }
+
+    /**
+     * Reads a map into the given parser.
+     *
+     * @param target   The parser to fill.
+     * @param filePath The path of the .tmx file.
+     */
+    public static void read(TmxParser target, String filePath) throws IOException, XMLStreamException {
+        new TmxStreamReader(target).readMap(filePath);
+    }
+
+    private void readMap(String filePath) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(filePath))) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                        continue;
+                    }
+                    switch (reader.getLocalName()) {
+                        case "map":
+                            target.setMapSize(intAttribute(reader, "width", 0), intAttribute(reader, "height", 0),
+                                    intAttribute(reader, "tilewidth", 0), intAttribute(reader, "tileheight", 0));
+                            target.setInfinite("1".equals(reader.getAttributeValue(null, "infinite")));
+                            break;
+                        case "tileset":
+                            readTilesetReference(reader);
+                            break;
+                        case "layer":
+                            readLayer(reader);
+                            break;
+                        case "objectgroup":
+                            readObjectLayer(reader);
+                            break;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    // A <tileset> in a map either points at a .tsx file or holds the tileset inline
+    private void readTilesetReference(XMLStreamReader reader) throws XMLStreamException {
+        int firstGid = intAttribute(reader, "firstgid", 1);
+        String source = reader.getAttributeValue(null, "source");
+        if (source == null) {
+            target.placeTileset(readTileset(reader), firstGid);  // Embedded in the map, so not shared
+            return;
+        }
+
+        skipElement(reader);
+        target.loadTileset(ASSET_DIRECTORY + source, firstGid, TmxStreamReader::readTilesetFile);  // Parsed in the background
+    }
+
+    // Parse a .tsx file; maps get it through the tileset registry, so each file is parsed once
+    private static TmxParser.TilesetDefinition readTilesetFile(String tsxFilePath) throws IOException, XMLStreamException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(tsxFilePath))) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("tileset")) {
+                        return readTileset(reader);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        throw new IOException("No <tileset> in " + tsxFilePath);
+    }
+
+    // Read a <tileset> element and its tile animations; the reader is positioned on its start tag
+    private static TmxParser.TilesetDefinition readTileset(XMLStreamReader reader) throws XMLStreamException {
+        int tileWidth = intAttribute(reader, "tilewidth", 0);
+        int tileHeight = intAttribute(reader, "tileheight", 0);
+        int tileCount = intAttribute(reader, "tilecount", 0);
+        int columns = intAttribute(reader, "columns", 0);
+        String imageSource = null;
+
+        int localTileId = -1;
+        List<TmxParser.Frame> frames = null;
+        Map<Integer, TmxParser.Animation> animations = new HashMap<>();  // By local tile id
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                switch (reader.getLocalName()) {
+                    case "image":
+                        if (imageSource == null) {
+                            imageSource = reader.getAttributeValue(null, "source");
+                        }
+                        break;
+                    case "tile":
+                        localTileId = intAttribute(reader, "id", 0);
+                        break;
+                    case "animation":
+                        frames = new ArrayList<>();
+                        break;
+                    case "frame":
+                        if (frames != null) {
+                            frames.add(new TmxParser.Frame(intAttribute(reader, "tileid", 0), intAttribute(reader, "duration", 0)));
+                        }
+                        break;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                if (reader.getLocalName().equals("animation") && frames != null) {
+                    // Keyed by the local tile id, maps add their firstGid
+                    if (!frames.isEmpty() && localTileId >= 0) {
+                        animations.put(localTileId, new TmxParser.Animation(frames));
+                    }
+                    frames = null;
+                }
+            }
+        }
+        return new TmxParser.TilesetDefinition(imageSource, tileWidth, tileHeight, tileCount, columns, animations);
+    }
+
+    private void readLayer(XMLStreamReader reader) throws IOException, XMLStreamException {
+        String name = reader.getAttributeValue(null, "name");
+        int width = intAttribute(reader, "width", 0);
+        int height = intAttribute(reader, "height", 0);
+        TmxParser.ChunkedLayer chunkedLayer = target.isInfinite()
+                ? new TmxParser.ChunkedLayer(name != null ? name : "", target.getLayers().size()) : null;
+        int[] tiles = new int[chunkedLayer == null ? width * height : 0];
+
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (reader.getLocalName().equals("data")) {
+                    // Both consume the whole <data> element
+                    if (chunkedLayer != null) {
+                        readChunks(reader, chunkedLayer);
+                    } else {
+                        tiles = readText(reader, dataDecoder(reader, width * height));
+                    }
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        target.addLayer(chunkedLayer != null ? chunkedLayer : new TmxParser.Layer(name != null ? name : "", width, height, tiles));
+    }
+
+    // Infinite maps split each layer's <data> into <chunk> elements, which are spilled to disk one by one
+    private void readChunks(XMLStreamReader reader, TmxParser.ChunkedLayer layer) throws IOException, XMLStreamException {
+        String encoding = reader.getAttributeValue(null, "encoding");
+        String compression = reader.getAttributeValue(null, "compression");
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("chunk")) {
+                int x = intAttribute(reader, "x", 0);
+                int y = intAttribute(reader, "y", 0);
+                int width = intAttribute(reader, "width", 0);
+                int height = intAttribute(reader, "height", 0);
+                int[] tiles = readText(reader, TileDataDecoder.forEncoding(encoding, compression, width * height));
+                target.addChunk(layer, x, y, width, height, tiles);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;  // </data>
+            }
+        }
+    }
+
+    private static TileDataDecoder dataDecoder(XMLStreamReader reader, int tileCount) {
+        return TileDataDecoder.forEncoding(
+                reader.getAttributeValue(null, "encoding"), reader.getAttributeValue(null, "compression"), tileCount);
+    }
+
+    // Decode the text of the current element piece by piece, straight from the parser's buffer
+    private static int[] readText(XMLStreamReader reader, TileDataDecoder decoder) throws IOException, XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                decoder.feed(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            }
+        }
+        return decoder.finish();
+    }
+
+    private void readObjectLayer(XMLStreamReader reader) throws XMLStreamException {
+        String layerName = reader.getAttributeValue(null, "name");
+        TmxParser.ObjectLayer objectLayer = new TmxParser.ObjectLayer(layerName != null ? layerName : "");
+
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (reader.getLocalName().equals("object")) {
+                    objectLayer.addObject(readObject(reader));  // Consumes the whole <object> element
+                } else {
+                    depth++;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        target.addObjectLayer(objectLayer);
+    }
+
+    private TmxParser.MapObject readObject(XMLStreamReader reader) throws XMLStreamException {
+        int id = intAttribute(reader, "id", 0);
+        int gid = intAttribute(reader, "gid", 0);
+        String name = attribute(reader, "name", "Unnamed");
+        float x = floatAttribute(reader, "x", 0);
+        float y = floatAttribute(reader, "y", 0);
+        float width = floatAttribute(reader, "width", 0);
+        float height = floatAttribute(reader, "height", 0);
+        float rotation = floatAttribute(reader, "rotation", 0);
+
+        Map<String, String> properties = new HashMap<>();
+        float[] polygon = null;
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                if (reader.getLocalName().equals("property")) {
+                    properties.put(attribute(reader, "name", ""), attribute(reader, "value", ""));
+                } else if (reader.getLocalName().equals("polygon") && polygon == null) {
+                    polygon = TmxParser.parsePoints(attribute(reader, "points", ""));
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+
+        TmxParser.MapObject mapObject = new TmxParser.MapObject(id, gid, name, x, y, width, height, properties);
+        mapObject.rotation = rotation;
+        mapObject.polygon = polygon;
+        return mapObject;
+    }
+
+    // Skip to the end tag of the element the reader is positioned on
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static String attribute(XMLStreamReader reader, String name, String defaultValue) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static int intAttribute(XMLStreamReader reader, String name, int defaultValue) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    private static float floatAttribute(XMLStreamReader reader, String name, float defaultValue) {
+        String value = reader.getAttributeValue(null, name);
+        return value != null ? Float.parseFloat(value) : defaultValue;
+    }
+}